@@ -59,27 +59,51 @@ public class MusicPlayerActivity extends AppCompatActivity implements MediaPlaye
                 if (musicDuration == -1) return;
                 progressTv.setText(MusicUtils.getTime(progress));
                 totalTv.setText(MusicUtils.getTime(musicDuration));
+                if (fromUser && seekBar.getMax() > 0) {
+                    // 进度条跟随拖动，seek 由菜单限流
+                    fmm.scrubTo(progress * 100f / seekBar.getMax());
+                }
             }
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
-
+                fmm.beginScrub();
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
+                fmm.endScrub();
+            }
+        });
+        fmm.setOnSeekListener(new FloatingMusicMenu.OnSeekListener() {
+            @Override
+            public void onSeek(float progress) {
                 int musicDuration = mediaPlayer.getDuration();
                 if (musicDuration == -1) return;
-                int progress = seekBar.getProgress();
-                mediaPlayer.seekTo(progress);
-                mediaPlayer.start();
-                progressTv.setText(MusicUtils.getTime(progress));
-                totalTv.setText(MusicUtils.getTime(musicDuration));
+                mediaPlayer.seekTo(Math.round(progress * musicDuration / 100f));
+            }
+
+            @Override
+            public void onSeekCommitted(float progress) {
+                if (!isPlaying) {
+                    start();
+                }
             }
         });
 
         getSupportActionBar().setTitle("Music Player");
         initMusicPlayer();
+        if (savedInstanceState == null) {
+            fmm.setMusicCover(getResources().getDrawable(R.drawable.cover));
+        }
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Bundle savedInstanceState) {
+        super.onRestoreInstanceState(savedInstanceState);
+        if (!fmm.isCoverRestored()) {
+            fmm.setMusicCover(getResources().getDrawable(R.drawable.cover));
+        }
     }
 
     public void initMusicPlayer() {
@@ -92,16 +116,16 @@ public class MusicPlayerActivity extends AppCompatActivity implements MediaPlaye
                 toggle();
             }
         });
-        fmm.setMusicCover(getResources().getDrawable(R.drawable.cover));
-
     }
 
     private void updateProgress() {
         int musicDuration = mediaPlayer.getDuration();
         if (musicDuration == -1) return;
         int musicProgress = mediaPlayer.getCurrentPosition();
-        musicSeekBar.setProgress(musicProgress);
-        musicSeekBar.setMax(musicDuration);
+        if (!fmm.isScrubbing()) {
+            musicSeekBar.setMax(musicDuration);
+            musicSeekBar.setProgress(musicProgress);
+        }
         fmm.setProgress(musicProgress * 100 / musicDuration);
     }
 
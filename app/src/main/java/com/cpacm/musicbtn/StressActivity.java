@@ -0,0 +1,245 @@
+package com.cpacm.musicbtn;
+
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.os.Handler;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.cpacm.FloatingMusicMenu;
+import com.google.android.material.floatingactionbutton.FloatingActionButton;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压力测试场景：创建大量菜单，按照固定的脚本旋转、展开、滚动和切换封面，结束后把帧耗时、卡顿、
+ * 主线程消息数量和堆内存写入 JSON 报告。可以在设备上通过
+ * {@code adb shell am start -n com.cpacm.musicbtn/.StressActivity --ei menus 200} 启动，
+ * 报告写入应用自己的外部文件目录，也可以在 Robolectric 中无界面运行。
+ */
+public class StressActivity extends AppCompatActivity {
+
+    public static final String EXTRA_MENU_COUNT = "menus";
+    public static final String EXTRA_BUTTONS_PER_MENU = "buttons";
+    public static final String EXTRA_DURATION_MILLIS = "duration";
+    /**
+     * 报告的文件名，只能是文件名，写入应用自己的外部文件目录（不可用时为内部文件目录）
+     */
+    public static final String EXTRA_REPORT_NAME = "report";
+
+    static final int DEFAULT_MENU_COUNT = 60;
+    static final int MAX_MENU_COUNT = 500;
+    static final int DEFAULT_BUTTONS_PER_MENU = 2;
+    static final int MAX_BUTTONS_PER_MENU = 8;
+    static final long DEFAULT_DURATION_MILLIS = 15000;
+    static final long STEP_MILLIS = 250;
+    private static final int MENUS_PER_ROW = 4;
+    private static final String TAG = "StressActivity";
+    private static final String DEFAULT_REPORT_NAME = "stress-report.json";
+
+    private static final int[] COVERS = {R.drawable.cover, R.drawable.author, R.drawable.moefou};
+
+    private final List<FloatingMusicMenu> menus = new ArrayList<>();
+    private final Bitmap[] covers = new Bitmap[COVERS.length];
+    private final StressRecorder recorder = new StressRecorder();
+    private final Handler handler = new Handler();
+    private ScrollView scrollView;
+    private int menuCount;
+    private int buttonsPerMenu;
+    private long durationMillis;
+    private File reportFile;
+    private int step;
+    private int scrollDirection = 1;
+    private boolean finished;
+
+    private final Runnable stepRunnable = new Runnable() {
+        @Override
+        public void run() {
+            runStep();
+            step++;
+            if (step * STEP_MILLIS >= durationMillis) {
+                finishScenario();
+            } else {
+                handler.postDelayed(this, STEP_MILLIS);
+            }
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        menuCount = clamp(getIntent().getIntExtra(EXTRA_MENU_COUNT, DEFAULT_MENU_COUNT), 1, MAX_MENU_COUNT);
+        buttonsPerMenu = clamp(getIntent().getIntExtra(EXTRA_BUTTONS_PER_MENU, DEFAULT_BUTTONS_PER_MENU), 0, MAX_BUTTONS_PER_MENU);
+        durationMillis = Math.max(STEP_MILLIS, getIntent().getLongExtra(EXTRA_DURATION_MILLIS, DEFAULT_DURATION_MILLIS));
+        reportFile = resolveReportFile(getIntent().getStringExtra(EXTRA_REPORT_NAME));
+
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setTitle("Stress " + menuCount + "x" + buttonsPerMenu);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 4;
+        for (int i = 0; i < COVERS.length; i++) {
+            covers[i] = BitmapFactory.decodeResource(getResources(), COVERS[i], options);
+        }
+        scrollView = new ScrollView(this);
+        scrollView.addView(createMenus());
+        setContentView(scrollView);
+    }
+
+    private LinearLayout createMenus() {
+        LinearLayout column = new LinearLayout(this);
+        column.setOrientation(LinearLayout.VERTICAL);
+        LayoutInflater inflater = LayoutInflater.from(this);
+        LinearLayout row = null;
+        for (int i = 0; i < menuCount; i++) {
+            if (i % MENUS_PER_ROW == 0) {
+                row = new LinearLayout(this);
+                row.setOrientation(LinearLayout.HORIZONTAL);
+                column.addView(row);
+            }
+            FloatingMusicMenu menu = (FloatingMusicMenu) inflater.inflate(R.layout.item_stress_menu, row, false);
+            for (int j = 0; j < buttonsPerMenu; j++) {
+                FloatingActionButton button = new FloatingActionButton(this);
+                button.setSize(FloatingActionButton.SIZE_MINI);
+                button.setImageResource(j % 2 == 0 ? R.drawable.ic_add : R.drawable.ic_remove);
+                button.setBackgroundTintList(ColorStateList.valueOf(Color.DKGRAY));
+                menu.addButton(button);
+            }
+            menu.setMusicCover(covers[i % covers.length], coverKey(i % covers.length));
+            menu.setProgress(i * 7 % 100);
+            row.addView(menu);
+            menus.add(menu);
+        }
+        return column;
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (step == 0 && !finished) {
+            recorder.start(this);
+            handler.postDelayed(stepRunnable, STEP_MILLIS);
+        }
+    }
+
+    /**
+     * 每一步都更新所有菜单的进度，其余操作按步数轮流进行，每次只作用于一部分菜单
+     */
+    private void runStep() {
+        int phase = step % 4;
+        int round = step / 4;
+        for (int i = 0; i < menus.size(); i++) {
+            FloatingMusicMenu menu = menus.get(i);
+            menu.setProgress((i * 7 + step) % 100);
+            if ((i + round) % 3 != 0) continue;
+            switch (phase) {
+                case 0:
+                    menu.toggle();
+                    break;
+                case 1:
+                    if ((i + round) % 2 == 0) {
+                        menu.start();
+                    } else {
+                        menu.stop();
+                    }
+                    break;
+                case 2:
+                    int cover = (i + round) % covers.length;
+                    menu.setMusicCover(covers[cover], coverKey(cover));
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (phase == 3) {
+            scroll();
+        }
+        recorder.sampleHeap();
+    }
+
+    private void scroll() {
+        int range = scrollView.getChildAt(0).getHeight() - scrollView.getHeight();
+        if (range <= 0) return;
+        int y = scrollView.getScrollY();
+        if (y >= range) {
+            scrollDirection = -1;
+        } else if (y <= 0) {
+            scrollDirection = 1;
+        }
+        scrollView.smoothScrollBy(0, scrollDirection * scrollView.getHeight() / 2);
+    }
+
+    private void finishScenario() {
+        if (finished) return;
+        finished = true;
+        recorder.stop();
+        try {
+            JSONObject report = recorder.toJson();
+            JSONObject config = new JSONObject();
+            config.put("menus", menuCount);
+            config.put("buttonsPerMenu", buttonsPerMenu);
+            config.put("steps", step);
+            report.put("config", config);
+            StressRecorder.writeReport(report, reportFile);
+            Log.i(TAG, "Stress report written to " + reportFile);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Failed to write stress report", e);
+        }
+    }
+
+    boolean isScenarioFinished() {
+        return finished;
+    }
+
+    File getReportFile() {
+        return reportFile;
+    }
+
+    /**
+     * 页面是导出的，报告位置只接受文件名，不能通过 intent 写到应用目录之外或覆盖其它文件
+     */
+    private File resolveReportFile(String name) {
+        if (name == null || name.isEmpty() || name.contains(File.separator) || name.equals(".") || name.equals("..")) {
+            if (name != null) {
+                Log.w(TAG, "Ignoring invalid report name: " + name);
+            }
+            name = DEFAULT_REPORT_NAME;
+        }
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        return new File(dir, name);
+    }
+
+    private static String coverKey(int index) {
+        return "stress-cover-" + index;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(stepRunnable);
+        recorder.stop();
+        for (FloatingMusicMenu menu : menus) {
+            menu.stop();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.cpacm.musicbtn;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Printer;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * 压力测试期间的性能记录：Choreographer 帧间隔、FrameMetrics 帧耗时（API 24 以上且硬件加速时）、
+ * 主线程消息数量和堆内存，结束后输出为 JSON 报告。
+ * </p>
+ * <p>
+ * 主线程消息通过 {@link Looper#setMessageLogging(Printer)} 统计；Robolectric 不经过消息日志分发消息，
+ * 此时报告中的 messageLogging 为 false，消息数量没有参考意义。
+ *
+ * @author cpacm
+ * </p>
+ */
+class StressRecorder {
+
+    private static final long FRAME_INTERVAL_NANOS = 16_666_667L;
+    // 超过 1.5 帧计为卡顿，超过 700ms 计为冻结
+    private static final long JANK_THRESHOLD_NANOS = FRAME_INTERVAL_NANOS * 3 / 2;
+    private static final long FROZEN_THRESHOLD_NANOS = 700_000_000L;
+
+    private final LongSamples frameIntervals = new LongSamples();
+    private final LongSamples frameDurations = new LongSamples();
+    private long lastFrameTime;
+    private boolean recording;
+    private long startTime;
+    private long endTime;
+
+    private int messageCount;
+
+    private long heapStart;
+    private long heapMax;
+    private long heapEnd;
+    private long nativeHeapMax;
+
+    private HandlerThread metricsThread;
+    private Window window;
+    private Object frameMetricsListener;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!recording) return;
+            if (lastFrameTime != 0) {
+                frameIntervals.add(frameTimeNanos - lastFrameTime);
+            }
+            lastFrameTime = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    private final Printer messagePrinter = new Printer() {
+        @Override
+        public void println(String x) {
+            // 每条消息分发前后各打印一次
+            if (x.startsWith(">>>>> Dispatching")) {
+                messageCount++;
+            }
+        }
+    };
+
+    void start(Activity activity) {
+        if (recording) return;
+        recording = true;
+        startTime = System.nanoTime();
+        heapStart = usedHeap();
+        heapMax = heapStart;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+        Looper.getMainLooper().setMessageLogging(messagePrinter);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            startFrameMetrics(activity.getWindow());
+        }
+    }
+
+    private void startFrameMetrics(Window window) {
+        metricsThread = new HandlerThread("stress-frame-metrics");
+        metricsThread.start();
+        Window.OnFrameMetricsAvailableListener listener = new Window.OnFrameMetricsAvailableListener() {
+            @Override
+            public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCount) {
+                long duration = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+                synchronized (frameDurations) {
+                    frameDurations.add(duration);
+                }
+            }
+        };
+        try {
+            window.addOnFrameMetricsAvailableListener(listener, new Handler(metricsThread.getLooper()));
+            this.window = window;
+            this.frameMetricsListener = listener;
+        } catch (IllegalStateException e) {
+            // 没有硬件加速时不支持 FrameMetrics
+            metricsThread.quit();
+            metricsThread = null;
+        }
+    }
+
+    /**
+     * 脚本每一步调用一次，记录堆内存的峰值
+     */
+    void sampleHeap() {
+        if (!recording) return;
+        heapMax = Math.max(heapMax, usedHeap());
+        nativeHeapMax = Math.max(nativeHeapMax, Debug.getNativeHeapAllocatedSize());
+    }
+
+    void stop() {
+        if (!recording) return;
+        recording = false;
+        endTime = System.nanoTime();
+        sampleHeap();
+        heapEnd = usedHeap();
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        Looper.getMainLooper().setMessageLogging(null);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && frameMetricsListener != null) {
+            window.removeOnFrameMetricsAvailableListener((Window.OnFrameMetricsAvailableListener) frameMetricsListener);
+            frameMetricsListener = null;
+        }
+        if (metricsThread != null) {
+            metricsThread.quitSafely();
+            metricsThread = null;
+        }
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("durationMillis", (endTime - startTime) / 1_000_000);
+
+        JSONObject frames = frameStats(frameIntervals);
+        frames.put("jank", frameIntervals.countAbove(JANK_THRESHOLD_NANOS));
+        frames.put("frozen", frameIntervals.countAbove(FROZEN_THRESHOLD_NANOS));
+        json.put("frameIntervals", frames);
+        synchronized (frameDurations) {
+            JSONObject durations = frameStats(frameDurations);
+            durations.put("overBudget", frameDurations.countAbove(FRAME_INTERVAL_NANOS));
+            json.put("frameDurations", durations);
+        }
+
+        JSONObject messages = new JSONObject();
+        messages.put("messageLogging", messageCount > 0);
+        messages.put("count", messageCount);
+        json.put("mainThreadMessages", messages);
+
+        JSONObject heap = new JSONObject();
+        heap.put("startBytes", heapStart);
+        heap.put("maxBytes", heapMax);
+        heap.put("endBytes", heapEnd);
+        heap.put("nativeMaxBytes", nativeHeapMax);
+        json.put("heap", heap);
+        return json;
+    }
+
+    static void writeReport(JSONObject report, File file) throws IOException, JSONException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(report.toString(2));
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static JSONObject frameStats(LongSamples samples) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", samples.size());
+        json.put("meanMillis", samples.mean() / 1e6);
+        json.put("p50Millis", samples.percentile(50) / 1e6);
+        json.put("p90Millis", samples.percentile(90) / 1e6);
+        json.put("p99Millis", samples.percentile(99) / 1e6);
+        json.put("maxMillis", samples.percentile(100) / 1e6);
+        return json;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 不装箱的 long 数组
+     */
+    static final class LongSamples {
+        private long[] values = new long[256];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        double mean() {
+            if (size == 0) return 0;
+            double sum = 0;
+            for (int i = 0; i < size; i++) sum += values[i];
+            return sum / size;
+        }
+
+        long percentile(int percent) {
+            if (size == 0) return 0;
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percent / 100.0 * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+
+        int countAbove(long threshold) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (values[i] > threshold) count++;
+            }
+            return count;
+        }
+    }
+}
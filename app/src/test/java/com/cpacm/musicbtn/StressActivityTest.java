@@ -0,0 +1,73 @@
+package com.cpacm.musicbtn;
+
+import android.content.Intent;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 在 Robolectric 中无界面运行压力测试场景，报告写入 build/outputs/stress，用于比较库改动前后的指标
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class StressActivityTest {
+
+    private static final int MENUS = 200;
+    private static final long DURATION = 5000;
+
+    @Test
+    public void runsScenarioAndWritesReport() throws Exception {
+        Intent intent = new Intent(ApplicationProvider.getApplicationContext(), StressActivity.class)
+                .putExtra(StressActivity.EXTRA_MENU_COUNT, MENUS)
+                .putExtra(StressActivity.EXTRA_DURATION_MILLIS, DURATION)
+                .putExtra(StressActivity.EXTRA_REPORT_NAME, "stress-report.json");
+        StressActivity activity = Robolectric.buildActivity(StressActivity.class, intent).setup().get();
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(DURATION + StressActivity.STEP_MILLIS));
+        assertTrue(activity.isScenarioFinished());
+        File report = activity.getReportFile();
+        assertTrue(report.isFile());
+        assertEquals(activity.getExternalFilesDir(null), report.getParentFile());
+        // 复制到构建目录，方便在 CI 中收集
+        File output = new File(System.getProperty("fmm.outputDir", "build/outputs/stress"), report.getName());
+        output.getParentFile().mkdirs();
+        Files.copy(report.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8));
+        assertEquals(MENUS, json.getJSONObject("config").getInt("menus"));
+        assertEquals(DURATION / StressActivity.STEP_MILLIS, json.getJSONObject("config").getInt("steps"));
+        assertTrue(json.getJSONObject("frameIntervals").getInt("count") > 0);
+        assertTrue(json.getJSONObject("heap").getLong("maxBytes") > 0);
+    }
+
+    @Test
+    public void reportPathOutsideFilesDirIsIgnored() {
+        Intent intent = new Intent(ApplicationProvider.getApplicationContext(), StressActivity.class)
+                .putExtra(StressActivity.EXTRA_MENU_COUNT, 1)
+                .putExtra(StressActivity.EXTRA_REPORT_NAME, "../../shared_prefs/evil.json");
+        StressActivity activity = Robolectric.buildActivity(StressActivity.class, intent).setup().get();
+
+        File report = activity.getReportFile();
+        assertEquals(activity.getExternalFilesDir(null), report.getParentFile());
+        assertEquals("stress-report.json", report.getName());
+    }
+}
@@ -0,0 +1,352 @@
+package com.cpacm.media;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaControllerCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.view.View;
+
+import com.cpacm.FloatingMusicMenu;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * 把 {@link FloatingMusicMenu} 绑定到 {@link MediaControllerCompat}，代替定时轮询播放位置。
+ * 只在播放状态或元数据回调时更新菜单；播放期间按照
+ * {@code position + speed × (now − lastPositionUpdateTime)} 推算当前位置，只在进度前进 {@link #PROGRESS_STEP}
+ * 所需的时间之后更新一次，并且不超过菜单 {@link com.cpacm.FrameRatePolicy} 的帧率。暂停、菜单离开窗口时不再更新。
+ * </p>
+ * <p>
+ * 封面从元数据的 {@link MediaMetadataCompat#METADATA_KEY_ART} 等位图或 {@link MediaMetadataCompat#METADATA_KEY_ART_URI}
+ * 等 uri 中获取，在后台线程解码并缩小到 {@link #setArtworkSize(int)} 指定的尺寸。
+ * uri 通过 {@link ContentResolver} 打开，支持 content、file 和 android.resource，网络地址需要由播放服务转换。
+ * </p>
+ * <p>
+ * 所有方法都需要在主线程调用。
+ *
+ * @author cpacm
+ * </p>
+ */
+public final class MediaControllerBinder {
+
+    static final int DEFAULT_ARTWORK_SIZE_DP = 64;
+    /**
+     * 两次更新之间进度至少前进的百分比，约为进度条的三分之一度
+     */
+    static final float PROGRESS_STEP = 0.1f;
+
+    private static final String[] ARTWORK_BITMAP_KEYS = {
+            MediaMetadataCompat.METADATA_KEY_ART,
+            MediaMetadataCompat.METADATA_KEY_ALBUM_ART,
+            MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON
+    };
+    private static final String[] ARTWORK_URI_KEYS = {
+            MediaMetadataCompat.METADATA_KEY_ART_URI,
+            MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI,
+            MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON_URI
+    };
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService artworkExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "fmm-media-artwork");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private final FloatingMusicMenu menu;
+    private final MediaControllerCompat controller;
+    private final ContentResolver contentResolver;
+    private int artworkSize;
+
+    private boolean bound;
+    private boolean attached;
+    private boolean playing;
+    private boolean updateScheduled;
+    private PlaybackStateCompat playbackState;
+    private long duration;
+    private float lastProgress = -1;
+    private float lastBufferedProgress = -1;
+    private String artworkKey;
+    // 每次请求新封面时递增，丢弃过期的解码结果
+    private int artworkGeneration;
+
+    private final MediaControllerCompat.Callback controllerCallback = new MediaControllerCompat.Callback() {
+        @Override
+        public void onPlaybackStateChanged(PlaybackStateCompat state) {
+            applyPlaybackState(state);
+        }
+
+        @Override
+        public void onMetadataChanged(MediaMetadataCompat metadata) {
+            applyMetadata(metadata);
+        }
+
+        @Override
+        public void onSessionDestroyed() {
+            applyPlaybackState(null);
+        }
+    };
+
+    private final Runnable progressUpdate = new Runnable() {
+        @Override
+        public void run() {
+            updateScheduled = false;
+            // PlaybackStateCompat 的更新时间基于 elapsedRealtime
+            updateProgress(SystemClock.elapsedRealtime());
+            scheduleUpdate();
+        }
+    };
+
+    private final View.OnAttachStateChangeListener attachListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            attached = true;
+            updateProgress(SystemClock.elapsedRealtime());
+            scheduleUpdate();
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            attached = false;
+            cancelUpdate();
+        }
+    };
+
+    private MediaControllerBinder(FloatingMusicMenu menu, MediaControllerCompat controller) {
+        this.menu = menu;
+        this.controller = controller;
+        this.contentResolver = menu.getContext().getApplicationContext().getContentResolver();
+        this.artworkSize = Math.round(DEFAULT_ARTWORK_SIZE_DP * menu.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * 绑定菜单和媒体控制器，立即应用控制器当前的状态和元数据
+     *
+     * @param menu       音乐菜单
+     * @param controller 媒体控制器，例如通过 MediaBrowserCompat 连接到播放服务后创建
+     * @return 不再需要时调用 {@link #unbind()}
+     */
+    public static MediaControllerBinder bind(FloatingMusicMenu menu, MediaControllerCompat controller) {
+        MediaControllerBinder binder = new MediaControllerBinder(menu, controller);
+        binder.bind();
+        return binder;
+    }
+
+    private void bind() {
+        bound = true;
+        attached = menu.isAttachedToWindow();
+        menu.addOnAttachStateChangeListener(attachListener);
+        controller.registerCallback(controllerCallback, mainHandler);
+        applyMetadata(controller.getMetadata());
+        applyPlaybackState(controller.getPlaybackState());
+    }
+
+    /**
+     * 解除绑定，菜单保持当前的显示状态
+     */
+    public void unbind() {
+        if (!bound) return;
+        bound = false;
+        controller.unregisterCallback(controllerCallback);
+        menu.removeOnAttachStateChangeListener(attachListener);
+        cancelUpdate();
+        artworkGeneration++;
+    }
+
+    public boolean isBound() {
+        return bound;
+    }
+
+    /**
+     * 设置封面解码后的尺寸，只影响之后加载的封面
+     *
+     * @param artworkSize 像素，默认为 {@link #DEFAULT_ARTWORK_SIZE_DP} dp
+     */
+    public void setArtworkSize(int artworkSize) {
+        this.artworkSize = Math.max(1, artworkSize);
+    }
+
+    private void applyPlaybackState(PlaybackStateCompat state) {
+        if (!bound) return;
+        playbackState = state;
+        boolean nowPlaying = state != null && state.getState() == PlaybackStateCompat.STATE_PLAYING;
+        if (nowPlaying != playing) {
+            playing = nowPlaying;
+            if (playing) {
+                menu.start();
+            } else {
+                menu.stop();
+            }
+        }
+        // 位置、速度都可能变化，重新计算下一次更新的时间
+        cancelUpdate();
+        updateBufferedProgress();
+        updateProgress(SystemClock.elapsedRealtime());
+        scheduleUpdate();
+    }
+
+    private void applyMetadata(MediaMetadataCompat metadata) {
+        if (!bound) return;
+        duration = metadata == null ? 0 : metadata.getLong(MediaMetadataCompat.METADATA_KEY_DURATION);
+        cancelUpdate();
+        updateBufferedProgress();
+        updateProgress(SystemClock.elapsedRealtime());
+        scheduleUpdate();
+        loadArtwork(metadata);
+    }
+
+    private void updateProgress(long now) {
+        if (playbackState == null || duration <= 0) return;
+        long position = playbackState.getPosition();
+        if (playing) {
+            position += (long) (playbackState.getPlaybackSpeed() * (now - playbackState.getLastPositionUpdateTime()));
+        }
+        position = Math.max(0, Math.min(duration, position));
+        float progress = position * 100f / duration;
+        if (progress != lastProgress) {
+            lastProgress = progress;
+            menu.setProgress(progress);
+        }
+    }
+
+    private void updateBufferedProgress() {
+        if (playbackState == null || duration <= 0) return;
+        long buffered = Math.max(0, Math.min(duration, playbackState.getBufferedPosition()));
+        float bufferedProgress = buffered * 100f / duration;
+        if (bufferedProgress != lastBufferedProgress) {
+            lastBufferedProgress = bufferedProgress;
+            menu.setBufferedProgress(bufferedProgress);
+        }
+    }
+
+    /**
+     * 只在播放、菜单在窗口中并且位置会变化时安排下一次更新
+     */
+    private void scheduleUpdate() {
+        if (updateScheduled || !bound || !playing || !attached || duration <= 0
+                || playbackState == null || playbackState.getPlaybackSpeed() == 0) {
+            return;
+        }
+        updateScheduled = true;
+        mainHandler.postDelayed(progressUpdate, getUpdateInterval());
+    }
+
+    /**
+     * 进度前进 {@link #PROGRESS_STEP} 所需的时间，不短于菜单帧率策略的帧间隔
+     */
+    long getUpdateInterval() {
+        float speed = Math.abs(playbackState.getPlaybackSpeed());
+        long stepInterval = (long) (duration * PROGRESS_STEP / 100f / speed);
+        return Math.max(menu.getFrameRatePolicy().getFrameInterval(), stepInterval);
+    }
+
+    boolean isUpdateScheduled() {
+        return updateScheduled;
+    }
+
+    private void cancelUpdate() {
+        if (!updateScheduled) return;
+        updateScheduled = false;
+        mainHandler.removeCallbacks(progressUpdate);
+    }
+
+    private void loadArtwork(MediaMetadataCompat metadata) {
+        if (metadata == null) return;
+        Bitmap bitmap = null;
+        for (String key : ARTWORK_BITMAP_KEYS) {
+            bitmap = metadata.getBitmap(key);
+            if (bitmap != null) break;
+        }
+        String uri = null;
+        for (String key : ARTWORK_URI_KEYS) {
+            uri = metadata.getString(key);
+            if (uri != null) break;
+        }
+        if (bitmap == null && uri == null) return;
+
+        final String key = uri != null ? uri : metadata.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID);
+        // 同一张封面重复回调（例如只更新了时长）时不再解码
+        if (key != null && key.equals(artworkKey)) return;
+        artworkKey = key;
+
+        final int generation = ++artworkGeneration;
+        final Bitmap source = bitmap;
+        final String sourceUri = uri;
+        final int size = artworkSize;
+        artworkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap cover = source != null ? scaleDown(source, size) : decode(sourceUri, size);
+                if (cover == null) return;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != artworkGeneration) return;
+                        menu.setMusicCover(cover, key);
+                    }
+                });
+            }
+        });
+    }
+
+    private static Bitmap scaleDown(Bitmap source, int size) {
+        int shortSide = Math.min(source.getWidth(), source.getHeight());
+        if (shortSide <= size) return source;
+        float scale = size / (float) shortSide;
+        return Bitmap.createScaledBitmap(source, Math.max(1, Math.round(source.getWidth() * scale)),
+                Math.max(1, Math.round(source.getHeight() * scale)), true);
+    }
+
+    /**
+     * 先读取尺寸，再按照 2 的幂次采样解码，最后缩小到目标尺寸
+     */
+    private Bitmap decode(String uri, int size) {
+        Uri parsed = Uri.parse(uri);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(parsed, options);
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        if (shortSide <= 0) return null;
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = decodeStream(parsed, options);
+        return bitmap == null ? null : scaleDown(bitmap, size);
+    }
+
+    private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) {
+        InputStream input = null;
+        try {
+            input = contentResolver.openInputStream(uri);
+            if (input == null) return null;
+            return BitmapFactory.decodeStream(input, null, options);
+        } catch (IOException | SecurityException e) {
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.cpacm.media;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Looper;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.view.ContextThemeWrapper;
+
+import com.cpacm.FloatingMusicMenu;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 播放状态、元数据与菜单的同步，以及解除绑定后不再更新
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MediaControllerBinderTest {
+
+    private static final long DURATION = 100000;
+
+    private MediaSessionCompat session;
+    private RecordingMenu menu;
+    private MediaControllerBinder binder;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        Context context = new ContextThemeWrapper(activity,
+                com.google.android.material.R.style.Theme_MaterialComponents_Light);
+        menu = new RecordingMenu(context);
+        activity.setContentView(menu);
+        session = new MediaSessionCompat(context, "test");
+        session.setActive(true);
+        session.setMetadata(new MediaMetadataCompat.Builder()
+                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, DURATION)
+                .build());
+        binder = MediaControllerBinder.bind(menu, session.getController());
+        idle();
+    }
+
+    @After
+    public void tearDown() {
+        binder.unbind();
+        session.release();
+    }
+
+    @Test
+    public void playAndPauseFollowPlaybackState() {
+        setState(PlaybackStateCompat.STATE_PLAYING, 0);
+        assertTrue(menu.rotating);
+        assertTrue(binder.isUpdateScheduled());
+
+        setState(PlaybackStateCompat.STATE_PAUSED, DURATION / 2);
+        assertFalse(menu.rotating);
+        assertFalse(binder.isUpdateScheduled());
+        assertEquals(50f, menu.progress, 0.01f);
+    }
+
+    @Test
+    public void progressUpdatesFollowProgressStep() {
+        setState(PlaybackStateCompat.STATE_PLAYING, 0);
+        // 100 秒的曲目每 100 毫秒前进 0.1%，一秒内只更新约 10 次，而不是每帧一次
+        assertEquals(100, binder.getUpdateInterval());
+        int before = menu.progressUpdates;
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1));
+        int updates = menu.progressUpdates - before;
+        assertTrue("updates " + updates, updates >= 9 && updates <= 11);
+        assertEquals(1f, menu.progress, 0.15f);
+    }
+
+    @Test
+    public void metadataLoadsArtwork() throws InterruptedException {
+        Bitmap art = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888);
+        art.eraseColor(Color.RED);
+        session.setMetadata(new MediaMetadataCompat.Builder()
+                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, DURATION)
+                .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, "song")
+                .putBitmap(MediaMetadataCompat.METADATA_KEY_ART, art)
+                .build());
+        // 封面在后台线程缩小后再回到主线程设置
+        for (int i = 0; i < 100 && menu.coverKey == null; i++) {
+            Thread.sleep(10);
+            idle();
+        }
+        assertEquals("song", menu.coverKey);
+        assertTrue(menu.cover.getWidth() < art.getWidth());
+    }
+
+    @Test
+    public void unbindRemovesCallbacks() {
+        setState(PlaybackStateCompat.STATE_PLAYING, 0);
+        binder.unbind();
+        assertFalse(binder.isBound());
+        assertFalse(binder.isUpdateScheduled());
+
+        int updates = menu.progressUpdates;
+        setState(PlaybackStateCompat.STATE_PAUSED, DURATION / 2);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1));
+        // 控制器回调和进度更新都已经移除，菜单保持解除绑定时的状态
+        assertTrue(menu.rotating);
+        assertEquals(updates, menu.progressUpdates);
+    }
+
+    private void setState(int state, long position) {
+        session.setPlaybackState(new PlaybackStateCompat.Builder()
+                .setState(state, position, 1f)
+                .build());
+        idle();
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static final class RecordingMenu extends FloatingMusicMenu {
+        boolean rotating;
+        float progress;
+        int progressUpdates;
+        Bitmap cover;
+        String coverKey;
+
+        RecordingMenu(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void start() {
+            super.start();
+            rotating = true;
+        }
+
+        @Override
+        public void stop() {
+            super.stop();
+            rotating = false;
+        }
+
+        @Override
+        public void setProgress(float progress) {
+            super.setProgress(progress);
+            this.progress = progress;
+            progressUpdates++;
+        }
+
+        @Override
+        public void setMusicCover(Bitmap bitmap, String coverKey) {
+            super.setMusicCover(bitmap, coverKey);
+            this.cover = bitmap;
+            this.coverKey = coverKey;
+        }
+    }
+}
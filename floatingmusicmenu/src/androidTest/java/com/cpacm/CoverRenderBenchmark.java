@@ -0,0 +1,135 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.view.Surface;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * <p>
+ * 比较封面的两种绘制方式：每帧 shader 绘制抗锯齿圆形，以及预先裁剪后带过滤的 drawBitmap。
+ * 软件画布和硬件画布（API 23 以上）各测一次，结果用于
+ * {@link RotatingProgressDrawable#recommendRenderMode(android.content.Context)} 按设备等级给出建议。
+ * </p>
+ *
+ * @author cpacm
+ */
+@RunWith(AndroidJUnit4.class)
+public class CoverRenderBenchmark {
+
+    private static final int SIZE = 168;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Bitmap cover;
+    private RotatingProgressDrawable drawable;
+    private ImageReader reader;
+
+    @Before
+    public void setUp() {
+        cover = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                cover.setPixel(x, y, Color.rgb(x * 255 / SIZE, y * 255 / SIZE, 128));
+            }
+        }
+        drawable = new RotatingProgressDrawable(
+                InstrumentationRegistry.getInstrumentation().getTargetContext().getResources(), cover);
+        drawable.setBounds(0, 0, SIZE, SIZE);
+        drawable.setProgress(40f);
+    }
+
+    @After
+    public void tearDown() {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void shaderSoftware() {
+        drawSoftware();
+    }
+
+    @Test
+    public void bakedSoftware() {
+        useBakedCover();
+        drawSoftware();
+    }
+
+    @Test
+    public void shaderHardware() {
+        drawHardware();
+    }
+
+    @Test
+    public void bakedHardware() {
+        useBakedCover();
+        drawHardware();
+    }
+
+    /**
+     * 裁剪只在设置封面时执行一次，在后台线程进行
+     */
+    @Test
+    public void bake() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            CircleCoverBaker.bake(cover, SIZE, null);
+        }
+    }
+
+    private void useBakedCover() {
+        drawable.setRenderMode(RotatingProgressDrawable.RENDER_MODE_BAKED);
+        Bitmap source = drawable.getCoverBitmap();
+        drawable.applyBakedCover(drawable.getBakeGeneration(), CircleCoverBaker.bake(source, SIZE, null));
+    }
+
+    private void drawSoftware() {
+        Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        float rotation = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            drawable.setRotation(rotation += 3);
+            drawable.draw(canvas);
+        }
+    }
+
+    private void drawHardware() {
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+        reader = ImageReader.newInstance(SIZE, SIZE, PixelFormat.RGBA_8888, 2);
+        Surface surface = reader.getSurface();
+        float rotation = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Canvas canvas = surface.lockHardwareCanvas();
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            drawable.setRotation(rotation += 3);
+            drawable.draw(canvas);
+            surface.unlockCanvasAndPost(canvas);
+            Image image = reader.acquireLatestImage();
+            if (image != null) {
+                image.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.cpacm;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.cpacm.floatingmusicbutton.test.R;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * <p>
+ * 启动基准：测量含有三个 {@link FloatingMusicMenu} 的布局从 inflate 到第一次测量布局的耗时。
+ * </p>
+ *
+ * @author cpacm
+ */
+@RunWith(AndroidJUnit4.class)
+public class MenuInflateBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+    private FrameLayout parent;
+
+    @Before
+    public void setUp() {
+        context = new ContextThemeWrapper(InstrumentationRegistry.getInstrumentation().getContext(),
+                com.google.android.material.R.style.Theme_MaterialComponents_Light);
+        parent = new FrameLayout(context);
+    }
+
+    @Test
+    @UiThreadTest
+    public void inflateThreeMenus() {
+        LayoutInflater inflater = LayoutInflater.from(context);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            inflater.inflate(R.layout.benchmark_three_menus, parent, false);
+        }
+    }
+
+    @Test
+    @UiThreadTest
+    public void inflateAndLayoutThreeMenus() {
+        LayoutInflater inflater = LayoutInflater.from(context);
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY);
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            ViewGroup root = (ViewGroup) inflater.inflate(R.layout.benchmark_three_menus, parent, false);
+            root.measure(widthSpec, heightSpec);
+            root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.cpacm;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import java.lang.reflect.Method;
+
+/**
+ * <p>
+ * 基于 {@link PowerManager} 的电源状态来源。
+ * 查询 PowerManager 需要跨进程调用，所以结果会缓存 {@link #CACHE_DURATION} 毫秒，不会每帧都去查询。
+ * 温控状态需要 API 29，低版本始终返回 {@link #THERMAL_STATUS_NONE}。
+ * </p>
+ *
+ * @author cpacm
+ */
+public class AndroidPowerStateSource implements PowerStateSource {
+
+    private static final long CACHE_DURATION = 5000;
+
+    private static AndroidPowerStateSource instance;
+
+    private final PowerManager powerManager;
+    private Method thermalMethod;
+    private long lastQueryTime = -CACHE_DURATION;
+    private boolean powerSaveMode;
+    private int thermalStatus;
+
+    private AndroidPowerStateSource(Context context) {
+        powerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+        if (Build.VERSION.SDK_INT >= 29) {
+            try {
+                thermalMethod = PowerManager.class.getMethod("getCurrentThermalStatus");
+            } catch (NoSuchMethodException e) {
+                thermalMethod = null;
+            }
+        }
+    }
+
+    public static synchronized AndroidPowerStateSource get(Context context) {
+        if (instance == null) {
+            instance = new AndroidPowerStateSource(context);
+        }
+        return instance;
+    }
+
+    @Override
+    public boolean isPowerSaveMode() {
+        update();
+        return powerSaveMode;
+    }
+
+    @Override
+    public int getThermalStatus() {
+        update();
+        return thermalStatus;
+    }
+
+    private synchronized void update() {
+        long now = SystemClock.uptimeMillis();
+        if (now - lastQueryTime < CACHE_DURATION) return;
+        lastQueryTime = now;
+        if (powerManager == null) return;
+        powerSaveMode = powerManager.isPowerSaveMode();
+        if (thermalMethod != null) {
+            try {
+                thermalStatus = (Integer) thermalMethod.invoke(powerManager);
+            } catch (Exception e) {
+                thermalStatus = THERMAL_STATUS_NONE;
+            }
+        }
+    }
+}
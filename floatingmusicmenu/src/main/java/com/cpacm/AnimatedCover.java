@@ -0,0 +1,35 @@
+package com.cpacm;
+
+import android.graphics.Canvas;
+
+/**
+ * <p>
+ * 动态封面的帧来源。帧在后台线程逐帧绘制到可复用的位图中，再通过与静态封面相同的圆形 shader 显示。
+ * </p>
+ * <p>
+ * 除 {@link #getWidth()} 和 {@link #getHeight()} 外，所有方法只会在同一个后台线程上调用。
+ * GIF 可以直接使用 {@link MovieCover}；API 28 及以上可以使用 {@link AnimatedImageCover}，支持 GIF 和动态 WebP。
+ * 其它格式可以包装对应的逐帧解码器实现此接口。
+ *
+ * @author cpacm
+ * </p>
+ */
+public interface AnimatedCover {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * 把下一帧绘制到 canvas 上，canvas 已经按照居中裁剪缩放好，直接按照原始尺寸绘制即可
+     *
+     * @param canvas 目标画布，已经清空
+     * @return 这一帧的显示时长（毫秒）
+     */
+    long drawNextFrame(Canvas canvas);
+
+    /**
+     * 不再使用时释放解码器
+     */
+    void release();
+}
@@ -0,0 +1,246 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Shader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/**
+ * <p>
+ * 动态封面的帧缓冲。{@link #BUFFER_SIZE} 张位图组成环形缓冲，每张位图预先创建好 {@link BitmapShader}，
+ * 后台线程提前把帧画进空闲的位图，主线程按照帧时长切换 shader，整个播放过程中不再分配位图。
+ * </p>
+ * <p>
+ * 主线程来不及显示时，过期的帧直接丢弃而不是排队，保证显示的总是最新的一帧；
+ * 缓冲区满时后台线程停止解码，不会无限制地超前。
+ * 被替换下来的帧要等到新的一帧绘制完成（{@link #onFrameDrawn()}）之后才交还给后台线程，
+ * 解码不会覆盖主线程可能仍在绘制的位图。
+ *
+ * @author cpacm
+ * </p>
+ */
+final class AnimatedCoverPlayer {
+
+    static final int BUFFER_SIZE = 3;
+    // 没有可显示的帧时的重试间隔
+    static final long STARVED_RETRY_DELAY = 16;
+
+    private static final int SLOT_FREE = 0;
+    private static final int SLOT_DECODING = 1;
+    private static final int SLOT_READY = 2;
+    private static final int SLOT_SHOWN = 3;
+    // 已经被替换，但新的一帧还没有绘制，仍然可能被读取
+    private static final int SLOT_RETIRED = 4;
+
+    private static HandlerThread decodeThread;
+    private static Handler decodeHandler;
+
+    private final AnimatedCover cover;
+    private final int size;
+    private final Bitmap[] bitmaps = new Bitmap[BUFFER_SIZE];
+    private final BitmapShader[] shaders = new BitmapShader[BUFFER_SIZE];
+    private final Canvas[] canvases = new Canvas[BUFFER_SIZE];
+    private final long[] durations = new long[BUFFER_SIZE];
+    private final long[] sequences = new long[BUFFER_SIZE];
+    private final int[] states = new int[BUFFER_SIZE];
+    private final Object lock = new Object();
+    private final Handler handler;
+    private long nextSequence;
+    private boolean decodeScheduled;
+    private boolean released;
+
+    // 以下只在主线程访问
+    private int shown = -1;
+    private long nextFrameTime;
+
+    private final Runnable decodeJob = new Runnable() {
+        @Override
+        public void run() {
+            decodeFrames();
+        }
+    };
+
+    private final Runnable releaseJob = new Runnable() {
+        @Override
+        public void run() {
+            cover.release();
+        }
+    };
+
+    /**
+     * @param cover 帧来源
+     * @param size  绘制尺寸，帧按照居中裁剪缩放到该尺寸
+     */
+    AnimatedCoverPlayer(AnimatedCover cover, int size) {
+        this.cover = cover;
+        this.size = Math.max(1, size);
+        this.handler = getDecodeHandler();
+        int sourceSize = Math.max(1, Math.min(cover.getWidth(), cover.getHeight()));
+        float scale = this.size / (float) sourceSize;
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            bitmaps[i] = Bitmap.createBitmap(this.size, this.size, Bitmap.Config.ARGB_8888);
+            shaders[i] = new BitmapShader(bitmaps[i], Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            canvases[i] = new Canvas(bitmaps[i]);
+            canvases[i].scale(scale, scale);
+            canvases[i].translate(-(cover.getWidth() - sourceSize) / 2f, -(cover.getHeight() - sourceSize) / 2f);
+        }
+    }
+
+    private static synchronized Handler getDecodeHandler() {
+        if (decodeHandler == null) {
+            decodeThread = new HandlerThread("fmm-animated-cover", Process.THREAD_PRIORITY_BACKGROUND);
+            decodeThread.start();
+            decodeHandler = new Handler(decodeThread.getLooper());
+        }
+        return decodeHandler;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * 开始（或继续）提前解码
+     */
+    void start() {
+        scheduleDecode();
+    }
+
+    /**
+     * 在主线程调用，到时间时切换到最新的一帧
+     *
+     * @param now 当前时间
+     * @return 切换后的 shader，没有切换时返回 null
+     */
+    BitmapShader advance(long now) {
+        if (shown >= 0 && now < nextFrameTime) return null;
+        int candidate = -1;
+        synchronized (lock) {
+            if (released) return null;
+            long lateBy = shown < 0 ? 0 : now - nextFrameTime;
+            while (true) {
+                int next = oldestReady();
+                if (next < 0) break;
+                if (candidate >= 0) {
+                    // 已经落后超过一帧，丢弃过期的帧
+                    if (lateBy < durations[candidate]) break;
+                    lateBy -= durations[candidate];
+                    states[candidate] = SLOT_FREE;
+                }
+                candidate = next;
+                states[candidate] = SLOT_SHOWN;
+            }
+            if (candidate < 0) return null;
+            if (shown >= 0) {
+                states[shown] = SLOT_RETIRED;
+            }
+        }
+        shown = candidate;
+        if (nextFrameTime == 0 || now - nextFrameTime >= durations[candidate]) {
+            // 第一帧或者落后太多时以当前时间重新计时
+            nextFrameTime = now + durations[candidate];
+        } else {
+            nextFrameTime += durations[candidate];
+        }
+        // 被跳过的帧已经空出，可以继续解码
+        scheduleDecode();
+        return shaders[candidate];
+    }
+
+    /**
+     * 在主线程调用，使用 {@link #advance} 返回的 shader 绘制完成后，把被替换下来的帧交还给后台线程
+     */
+    void onFrameDrawn() {
+        boolean freed = false;
+        synchronized (lock) {
+            for (int i = 0; i < BUFFER_SIZE; i++) {
+                if (states[i] == SLOT_RETIRED) {
+                    states[i] = SLOT_FREE;
+                    freed = true;
+                }
+            }
+        }
+        if (freed) {
+            scheduleDecode();
+        }
+    }
+
+    /**
+     * 距离下一帧的时间，用于安排下一次 {@link #advance}
+     */
+    long getDelay(long now) {
+        if (shown < 0) return STARVED_RETRY_DELAY;
+        return Math.max(STARVED_RETRY_DELAY, nextFrameTime - now);
+    }
+
+    /**
+     * 当前显示的帧，会被后续帧覆盖，只能临时读取
+     */
+    Bitmap getShownBitmap() {
+        return shown < 0 ? null : bitmaps[shown];
+    }
+
+    void release() {
+        synchronized (lock) {
+            if (released) return;
+            released = true;
+        }
+        handler.removeCallbacks(decodeJob);
+        handler.post(releaseJob);
+    }
+
+    private int oldestReady() {
+        int oldest = -1;
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            if (states[i] == SLOT_READY && (oldest < 0 || sequences[i] < sequences[oldest])) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    private void scheduleDecode() {
+        synchronized (lock) {
+            if (released || decodeScheduled) return;
+            decodeScheduled = true;
+        }
+        handler.post(decodeJob);
+    }
+
+    /**
+     * 在后台线程把帧画进所有空闲的位图
+     */
+    private void decodeFrames() {
+        while (true) {
+            int slot = -1;
+            synchronized (lock) {
+                if (released) {
+                    decodeScheduled = false;
+                    return;
+                }
+                for (int i = 0; i < BUFFER_SIZE; i++) {
+                    if (states[i] == SLOT_FREE) {
+                        slot = i;
+                        break;
+                    }
+                }
+                if (slot < 0) {
+                    decodeScheduled = false;
+                    return;
+                }
+                states[slot] = SLOT_DECODING;
+            }
+            bitmaps[slot].eraseColor(Color.TRANSPARENT);
+            long duration = Math.max(1, cover.drawNextFrame(canvases[slot]));
+            synchronized (lock) {
+                durations[slot] = duration;
+                sequences[slot] = nextSequence++;
+                states[slot] = SLOT_READY;
+            }
+        }
+    }
+}
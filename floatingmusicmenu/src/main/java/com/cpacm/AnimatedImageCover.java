@@ -0,0 +1,114 @@
+package com.cpacm;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.ImageDecoder;
+import android.graphics.drawable.AnimatedImageDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Size;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * 基于 {@link AnimatedImageDrawable} 的动态封面（API 28 及以上），支持 GIF 和动态 WebP。
+ * 帧的切换时间来自解码器给出的每一帧时长，而不是固定的步长。
+ * </p>
+ * <p>
+ *
+ * @author cpacm
+ * </p>
+ */
+@TargetApi(Build.VERSION_CODES.P)
+public class AnimatedImageCover implements AnimatedCover {
+
+    // 解码器没有给出下一帧的时间时（例如已经播放结束）的重绘间隔
+    static final long IDLE_FRAME_DURATION = 1000;
+
+    private final AnimatedImageDrawable drawable;
+    private long nextFrameTime;
+    private long lastFrameTime;
+
+    // Drawable 只弱引用 callback，需要自己持有
+    private final Drawable.Callback callback = new Drawable.Callback() {
+        @Override
+        public void invalidateDrawable(Drawable who) {
+        }
+
+        @Override
+        public void scheduleDrawable(Drawable who, Runnable what, long when) {
+            // 软件绘制时 draw() 通过 scheduleSelf 给出下一帧的时间
+            nextFrameTime = when;
+        }
+
+        @Override
+        public void unscheduleDrawable(Drawable who, Runnable what) {
+        }
+    };
+
+    /**
+     * @param drawable 动态图片，由此封面负责开始和停止播放
+     */
+    public AnimatedImageCover(AnimatedImageDrawable drawable) {
+        this.drawable = drawable;
+        drawable.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+        drawable.setCallback(callback);
+        drawable.start();
+    }
+
+    /**
+     * 解码时直接缩小到显示尺寸，不会解码原始大小的帧
+     *
+     * @param source 图片来源，例如 {@link ImageDecoder#createSource(java.io.File)}
+     * @param size   显示尺寸（像素），较短的一边缩小到该尺寸，小于等于 0 时不缩小
+     * @return 不是动态图片时返回 null
+     */
+    public static AnimatedImageCover decode(ImageDecoder.Source source, final int size) throws IOException {
+        Drawable drawable = ImageDecoder.decodeDrawable(source, new ImageDecoder.OnHeaderDecodedListener() {
+            @Override
+            public void onHeaderDecoded(ImageDecoder decoder, ImageDecoder.ImageInfo info, ImageDecoder.Source source) {
+                Size imageSize = info.getSize();
+                int shortSide = Math.min(imageSize.getWidth(), imageSize.getHeight());
+                if (size > 0 && shortSide > size) {
+                    float scale = size / (float) shortSide;
+                    decoder.setTargetSize(Math.max(1, Math.round(imageSize.getWidth() * scale)),
+                            Math.max(1, Math.round(imageSize.getHeight() * scale)));
+                }
+            }
+        });
+        return drawable instanceof AnimatedImageDrawable
+                ? new AnimatedImageCover((AnimatedImageDrawable) drawable) : null;
+    }
+
+    @Override
+    public int getWidth() {
+        return drawable.getIntrinsicWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return drawable.getIntrinsicHeight();
+    }
+
+    /**
+     * {@link AnimatedImageDrawable} 按照绘制时的时间选择帧。播放器会提前缓冲几帧，
+     * 时间还没到时画出的是同一帧，这样的重复帧只显示 1 毫秒，不会把当前帧的显示时间拉长
+     */
+    @Override
+    public long drawNextFrame(Canvas canvas) {
+        nextFrameTime = 0;
+        drawable.draw(canvas);
+        if (nextFrameTime <= 0) return IDLE_FRAME_DURATION;
+        if (nextFrameTime == lastFrameTime) return 1;
+        lastFrameTime = nextFrameTime;
+        return Math.max(1, nextFrameTime - SystemClock.uptimeMillis());
+    }
+
+    @Override
+    public void release() {
+        drawable.stop();
+        drawable.setCallback(null);
+    }
+}
@@ -0,0 +1,74 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * 把封面预先裁剪成带抗锯齿边缘的圆形位图，之后每一帧只需要一次带过滤的 drawBitmap，
+ * 不再需要 shader 采样和圆形边缘的抗锯齿计算。裁剪在后台线程进行，每张封面只执行一次。
+ * </p>
+ *
+ * @author cpacm
+ */
+final class CircleCoverBaker {
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "fmm-cover-bake");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    interface Callback {
+        /**
+         * 在后台线程回调
+         *
+         * @param baked 圆形封面
+         */
+        void onCoverBaked(Bitmap baked);
+    }
+
+    private CircleCoverBaker() {
+    }
+
+    static void bakeAsync(final Bitmap source, final int size, final Matrix localMatrix, final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCoverBaked(bake(source, size, localMatrix));
+            }
+        });
+    }
+
+    /**
+     * 与 shader 绘制的几何完全一致，圆心和半径按整数计算
+     *
+     * @param source      封面，裁剪期间不能被修改
+     * @param size        绘制尺寸
+     * @param localMatrix 绘制时 shader 使用的矩阵，可以为 null
+     */
+    static Bitmap bake(Bitmap source, int size, Matrix localMatrix) {
+        size = Math.max(1, size);
+        Bitmap baked = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        BitmapShader shader = new BitmapShader(source, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        if (localMatrix != null) {
+            shader.setLocalMatrix(localMatrix);
+        }
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(shader);
+        new Canvas(baked).drawCircle(size / 2, size / 2, size / 2, paint);
+        return baked;
+    }
+}
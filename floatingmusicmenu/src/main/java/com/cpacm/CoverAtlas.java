@@ -0,0 +1,226 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.Shader;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * 封面图集：把大量显示尺寸的小封面打包进少数几张大位图（页）中，每页只有一个 {@link BitmapShader}。
+ * 列表或网格中的每个按钮只引用自己所在的区域，内存碎片和绘制时切换的 shader 数量只与页数有关，与按钮数量无关。
+ * </p>
+ * <p>
+ * 每页按照固定的格子大小划分区域，格子之间留出 {@link #PADDING} 像素避免过滤时采样到相邻封面。
+ * 所有格子都被占用时淘汰最久未使用且没有被引用的区域，仍然没有空位时新建一页，
+ * 达到页数上限后 {@link #acquire} 返回 null，调用方退回到单独的位图。
+ *
+ * @author cpacm
+ * </p>
+ */
+public class CoverAtlas {
+
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+    public static final int DEFAULT_MAX_PAGES = 4;
+    static final int PADDING = 1;
+
+    private final int cellSize;
+    private final int pageSize;
+    private final int maxPages;
+    private final int cellsPerRow;
+    private final List<Page> pages = new ArrayList<>();
+    private final Map<String, Region> regions = new HashMap<>();
+    private final Paint clearPaint = new Paint();
+    private final Rect cellRect = new Rect();
+    private long useCounter;
+
+    /**
+     * @param cellSize 每个封面的尺寸（像素），通常为按钮的显示尺寸
+     */
+    public CoverAtlas(int cellSize) {
+        this(cellSize, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * @param cellSize 每个封面的尺寸（像素）
+     * @param pageSize 每页的边长（像素）
+     * @param maxPages 最多的页数
+     */
+    public CoverAtlas(int cellSize, int pageSize, int maxPages) {
+        this.cellSize = Math.max(1, cellSize);
+        this.pageSize = Math.max(pageSize, this.cellSize + PADDING * 2);
+        this.maxPages = Math.max(1, maxPages);
+        this.cellsPerRow = this.pageSize / (this.cellSize + PADDING * 2);
+        clearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * 获取封面所在的区域，不在图集中时光栅化到新的区域，引用计数加一
+     *
+     * @param key    封面的唯一标识
+     * @param source 原始封面，只在第一次使用该 key 时绘制
+     * @return 图集已满时返回 null
+     */
+    public synchronized Region acquire(String key, Drawable source) {
+        Region region = regions.get(key);
+        if (region == null) {
+            region = allocate(key);
+            if (region == null) return null;
+            draw(region, source);
+        }
+        region.refs++;
+        region.lastUsed = ++useCounter;
+        return region;
+    }
+
+    /**
+     * @see #acquire(String, Drawable)
+     */
+    public synchronized Region acquire(String key, Bitmap source) {
+        return acquire(key, new BitmapDrawable(null, source));
+    }
+
+    /**
+     * 释放引用，引用为 0 的区域在空间不足时可以被淘汰
+     */
+    public synchronized void release(Region region) {
+        if (region != null && region.refs > 0) {
+            region.refs--;
+        }
+    }
+
+    private Region allocate(String key) {
+        Region region = null;
+        for (Page page : pages) {
+            int cell = page.nextFreeCell();
+            if (cell >= 0) {
+                region = new Region(page, cell);
+                break;
+            }
+        }
+        if (region == null && pages.size() < maxPages) {
+            Page page = new Page();
+            pages.add(page);
+            region = new Region(page, page.nextFreeCell());
+        }
+        if (region == null) {
+            region = evict();
+            if (region == null) return null;
+        }
+        region.key = key;
+        region.page.regions[region.cell] = region;
+        regions.put(key, region);
+        return region;
+    }
+
+    /**
+     * 淘汰最久未使用且没有被引用的区域，返回同一位置的新区域
+     */
+    private Region evict() {
+        Region oldest = null;
+        for (Region region : regions.values()) {
+            if (region.refs == 0 && (oldest == null || region.lastUsed < oldest.lastUsed)) {
+                oldest = region;
+            }
+        }
+        if (oldest == null) return null;
+        regions.remove(oldest.key);
+        oldest.page.regions[oldest.cell] = null;
+        return new Region(oldest.page, oldest.cell);
+    }
+
+    /**
+     * 居中裁剪绘制到区域中
+     */
+    private void draw(Region region, Drawable source) {
+        Canvas canvas = region.page.canvas;
+        cellRect.set(region.left, region.top, region.left + cellSize, region.top + cellSize);
+        canvas.drawRect(cellRect, clearPaint);
+        int width = source.getIntrinsicWidth();
+        int height = source.getIntrinsicHeight();
+        if (width <= 0 || height <= 0) {
+            width = height = cellSize;
+        }
+        float scale = cellSize / (float) Math.min(width, height);
+        int scaledWidth = Math.round(width * scale);
+        int scaledHeight = Math.round(height * scale);
+        int left = region.left + (cellSize - scaledWidth) / 2;
+        int top = region.top + (cellSize - scaledHeight) / 2;
+        Rect oldBounds = source.copyBounds();
+        canvas.save();
+        canvas.clipRect(cellRect);
+        source.setBounds(left, top, left + scaledWidth, top + scaledHeight);
+        source.draw(canvas);
+        canvas.restore();
+        source.setBounds(oldBounds);
+    }
+
+    final class Page {
+        final Bitmap bitmap;
+        final Canvas canvas;
+        final BitmapShader shader;
+        final Region[] regions;
+
+        Page() {
+            bitmap = Bitmap.createBitmap(pageSize, pageSize, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+            shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            regions = new Region[cellsPerRow * cellsPerRow];
+        }
+
+        int nextFreeCell() {
+            for (int i = 0; i < regions.length; i++) {
+                if (regions[i] == null) return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * 图集中的一个封面区域
+     */
+    public final class Region {
+        final Page page;
+        final int cell;
+        final int left;
+        final int top;
+        String key;
+        int refs;
+        long lastUsed;
+
+        Region(Page page, int cell) {
+            this.page = page;
+            this.cell = cell;
+            int stride = cellSize + PADDING * 2;
+            left = (cell % cellsPerRow) * stride + PADDING;
+            top = (cell / cellsPerRow) * stride + PADDING;
+        }
+
+        public int getSize() {
+            return cellSize;
+        }
+
+        CoverAtlas getAtlas() {
+            return CoverAtlas.this;
+        }
+    }
+}
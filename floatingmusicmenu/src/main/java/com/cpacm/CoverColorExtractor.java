@@ -0,0 +1,152 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * 封面主色提取器。在后台线程把封面缩小到 {@link #SAMPLE_SIZE} 像素见方后统计颜色，
+ * 得到进度条颜色和按钮背景色，调用方提供了 key 时按照 key 缓存结果，并在主线程一次性回调。
+ * </p>
+ *
+ * @author cpacm
+ */
+final class CoverColorExtractor {
+
+    private static final int SAMPLE_SIZE = 16;
+    private static final int CACHE_SIZE = 32;
+    private static final int MIN_ALPHA = 0x80;
+
+    private static final LruCache<String, int[]> cache = new LruCache<>(CACHE_SIZE);
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "fmm-cover-color");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    interface Callback {
+        /**
+         * 在主线程回调
+         *
+         * @param progressColor   进度条颜色
+         * @param backgroundColor 按钮背景色
+         */
+        void onColorsExtracted(int progressColor, int backgroundColor);
+    }
+
+    private CoverColorExtractor() {
+    }
+
+    /**
+     * 提取封面的颜色，命中缓存时直接回调
+     *
+     * @param key      调用方提供的封面唯一标识，为 null 时不缓存；对象的 identityHashCode 会重复，不能作为 key
+     * @param cover    封面位图，提取期间不能被修改或回收
+     * @param callback 主线程回调
+     */
+    static void extract(final String key, final Bitmap cover, final Callback callback) {
+        int[] cached = key != null ? cache.get(key) : null;
+        if (cached != null) {
+            callback.onColorsExtracted(cached[0], cached[1]);
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int[] colors = computeColors(cover);
+                if (key != null) {
+                    cache.put(key, colors);
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onColorsExtracted(colors[0], colors[1]);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 以 4 位精度量化颜色后统计直方图：出现最多的颜色作为背景色，
+     * 兼顾数量和饱和度、并且与背景色有区分度的颜色作为进度条颜色
+     *
+     * @return [进度条颜色, 背景色]
+     */
+    private static int[] computeColors(Bitmap cover) {
+        Bitmap sample = Bitmap.createScaledBitmap(cover, SAMPLE_SIZE, SAMPLE_SIZE, true);
+        int[] pixels = new int[SAMPLE_SIZE * SAMPLE_SIZE];
+        sample.getPixels(pixels, 0, SAMPLE_SIZE, 0, 0, SAMPLE_SIZE, SAMPLE_SIZE);
+        if (sample != cover) {
+            sample.recycle();
+        }
+
+        int[] histogram = new int[4096];
+        for (int pixel : pixels) {
+            if (Color.alpha(pixel) < MIN_ALPHA) continue;
+            histogram[quantize(pixel)]++;
+        }
+
+        int dominant = -1;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] > 0 && (dominant < 0 || histogram[i] > histogram[dominant])) {
+                dominant = i;
+            }
+        }
+        if (dominant < 0) {
+            return new int[]{Color.WHITE, Color.DKGRAY};
+        }
+        int backgroundColor = dequantize(dominant);
+
+        float[] hsv = new float[3];
+        int accent = -1;
+        float bestScore = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0 || distance(dequantize(i), backgroundColor) < 96) continue;
+            Color.colorToHSV(dequantize(i), hsv);
+            float score = histogram[i] * (hsv[1] + 0.1f) * (hsv[2] + 0.1f);
+            if (score > bestScore) {
+                bestScore = score;
+                accent = i;
+            }
+        }
+        int progressColor;
+        if (accent >= 0) {
+            progressColor = dequantize(accent);
+        } else {
+            // 封面颜色单一时，根据背景亮度选择黑白作为进度条颜色
+            Color.colorToHSV(backgroundColor, hsv);
+            progressColor = hsv[2] > 0.5f ? Color.BLACK : Color.WHITE;
+        }
+        return new int[]{progressColor, backgroundColor};
+    }
+
+    private static int quantize(int color) {
+        return ((Color.red(color) >> 4) << 8) | ((Color.green(color) >> 4) << 4) | (Color.blue(color) >> 4);
+    }
+
+    private static int dequantize(int bucket) {
+        int r = ((bucket >> 8) & 0xF) * 17;
+        int g = ((bucket >> 4) & 0xF) * 17;
+        int b = (bucket & 0xF) * 17;
+        return Color.rgb(r, g, b);
+    }
+
+    private static int distance(int c1, int c2) {
+        return Math.abs(Color.red(c1) - Color.red(c2))
+                + Math.abs(Color.green(c1) - Color.green(c2))
+                + Math.abs(Color.blue(c1) - Color.blue(c2));
+    }
+}
@@ -0,0 +1,364 @@
+package com.cpacm;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * 封面的磁盘缓存，保存已经缩小到显示尺寸、可以直接用于圆形绘制的封面。
+ * 文件格式为 {@link #HEADER_SIZE} 字节的文件头加上位图的原始像素，读取时通过内存映射直接拷贝进 {@link Bitmap}，
+ * 不需要再解码原图。缓存总大小超过上限时淘汰最久未使用的文件，访问顺序记录在内存中，
+ * 第一次访问时按照文件的修改时间初始化。
+ * </p>
+ * <p>
+ * 读取和写入都在同一个后台线程完成，主线程使用 {@link #get(String, Callback)}，结果回调到主线程。
+ *
+ * @author cpacm
+ * </p>
+ */
+public class CoverDiskCache {
+
+    public static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+    private static final String DIRECTORY_NAME = "fmm_covers";
+    private static final String FILE_SUFFIX = ".cover";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x464D4D43;
+    private static final int HEADER_SIZE = 16;
+    private static final Bitmap.Config[] CONFIGS = {
+            Bitmap.Config.ARGB_8888, Bitmap.Config.ARGB_4444, Bitmap.Config.RGB_565
+    };
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "fmm-cover-disk-cache");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final File directory;
+    private final long maxSize;
+    // 文件名 -> 文件大小，按照访问顺序排列，最久未使用的在最前面
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean indexLoaded;
+    private long size;
+
+    /**
+     * 使用应用缓存目录和默认大小上限
+     */
+    public CoverDiskCache(Context context) {
+        this(new File(context.getCacheDir(), DIRECTORY_NAME), DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param directory 缓存目录
+     * @param maxSize   缓存总大小上限（字节）
+     */
+    public CoverDiskCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 在后台线程读取缓存的封面，结果回调到主线程
+     *
+     * @param key      封面的唯一标识
+     * @param callback 未命中时回调 null
+     */
+    public void get(final String key, final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = get(key);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCoverLoaded(bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 同步读取缓存的封面并记录访问顺序，会访问磁盘，不要在主线程调用
+     *
+     * @param key 封面的唯一标识
+     * @return 未命中或文件损坏时返回 null
+     */
+    public Bitmap get(String key) {
+        File file = fileFor(key);
+        synchronized (index) {
+            loadIndex();
+            if (!index.containsKey(file.getName()) && !file.exists()) return null;
+        }
+        Bitmap bitmap = read(file);
+        synchronized (index) {
+            if (bitmap != null) {
+                if (index.get(file.getName()) == null) {
+                    addToIndex(file.getName(), file.length());
+                }
+            } else {
+                removeFromIndex(file.getName());
+            }
+        }
+        if (bitmap != null) {
+            // 只用于下次启动时初始化访问顺序
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bitmap;
+    }
+
+    private Bitmap read(File file) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                file.delete();
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            int magic = buffer.getInt();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int configIndex = buffer.getInt();
+            if (magic != MAGIC || width <= 0 || height <= 0 || configIndex < 0 || configIndex >= CONFIGS.length) {
+                file.delete();
+                return null;
+            }
+            Bitmap bitmap = Bitmap.createBitmap(width, height, CONFIGS[configIndex]);
+            if (length - HEADER_SIZE < bitmap.getByteCount()) {
+                bitmap.recycle();
+                file.delete();
+                return null;
+            }
+            buffer.position(HEADER_SIZE);
+            bitmap.copyPixelsFromBuffer(buffer);
+            return bitmap;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 在后台线程写入封面，写入期间位图不能被修改或回收
+     *
+     * @param key    封面的唯一标识
+     * @param bitmap 已经缩小到显示尺寸的封面
+     */
+    public void put(final String key, final Bitmap bitmap) {
+        final int configIndex = Arrays.asList(CONFIGS).indexOf(bitmap.getConfig());
+        if (configIndex < 0) return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = write(key, bitmap, configIndex);
+                if (file == null) return;
+                synchronized (index) {
+                    loadIndex();
+                    removeFromIndex(file.getName());
+                    addToIndex(file.getName(), file.length());
+                    trimToSize();
+                }
+            }
+        });
+    }
+
+    /**
+     * 在后台线程删除，排在之前的写入之后
+     */
+    public void remove(final String key) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File file = fileFor(key);
+                synchronized (index) {
+                    file.delete();
+                    removeFromIndex(file.getName());
+                }
+            }
+        });
+    }
+
+    /**
+     * 在后台线程清空，排在之前的写入之后
+     */
+    public void clear() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (index) {
+                    File[] files = directory.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            file.delete();
+                        }
+                    }
+                    index.clear();
+                    size = 0;
+                    indexLoaded = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * 等待之前提交的读写完成，用于测试
+     */
+    static void awaitIdle() throws InterruptedException, ExecutionException {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    /**
+     * @return 写入的文件，失败时返回 null
+     */
+    private File write(String key, Bitmap bitmap, int configIndex) {
+        if (!directory.exists() && !directory.mkdirs()) return null;
+        File target = fileFor(key);
+        File temp = new File(directory, target.getName() + TEMP_SUFFIX);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bitmap.getByteCount());
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(bitmap.getWidth());
+        buffer.putInt(bitmap.getHeight());
+        buffer.putInt(configIndex);
+        bitmap.copyPixelsToBuffer(buffer);
+        buffer.flip();
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                return null;
+            }
+            return target;
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return null;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * 第一次访问时按照修改时间建立访问顺序，需要持有 index 的锁
+     */
+    private void loadIndex() {
+        if (indexLoaded) return;
+        indexLoaded = true;
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long t1 = f1.lastModified();
+                long t2 = f2.lastModified();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                addToIndex(file.getName(), file.length());
+            }
+        }
+    }
+
+    private void addToIndex(String name, long length) {
+        index.put(name, length);
+        size += length;
+    }
+
+    private void removeFromIndex(String name) {
+        Long length = index.remove(name);
+        if (length != null) {
+            size -= length;
+        }
+    }
+
+    /**
+     * 淘汰最久未使用的文件，直到总大小不超过上限，需要持有 index 的锁
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            new File(directory, entry.getKey()).delete();
+            size -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, hashKey(key) + FILE_SUFFIX);
+    }
+
+    private static String hashKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest) {
+                builder.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return String.valueOf(key.hashCode());
+        }
+    }
+
+    /**
+     * 读取结果，在主线程回调
+     */
+    public interface Callback {
+        void onCoverLoaded(Bitmap bitmap);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
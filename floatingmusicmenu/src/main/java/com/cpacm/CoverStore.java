@@ -0,0 +1,192 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+
+/**
+ * <p>
+ * 多尺寸封面的内存缓存。同一张封面按照请求过的最大尺寸光栅化为第 0 级，其余尺寸按照 mipmap 的方式逐级减半生成，
+ * 每一级只在第一次被请求时创建。请求某个尺寸时返回不小于该尺寸的最小一级，
+ * 尺寸相近的按钮（例如同一列表中的多个迷你按钮）共用同一张位图，内存和光栅化时间不会随显示尺寸的数量增长。
+ * </p>
+ * <p>
+ * 返回的位图由多个 drawable 共享，调用方不能修改或回收。
+ *
+ * @author cpacm
+ * </p>
+ */
+public class CoverStore {
+
+    public static final int DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+    private static final int MIN_LEVEL_SIZE = 16;
+
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect scaleRect = new Rect();
+    private final LruCache<String, Entry> entries;
+
+    /**
+     * 使用默认的内存上限
+     */
+    public CoverStore() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize 所有封面各级位图的总大小上限（字节）
+     */
+    public CoverStore(int maxSize) {
+        entries = new LruCache<String, Entry>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return value.byteCount;
+            }
+        };
+    }
+
+    /**
+     * 获取适合 size 显示的封面，没有缓存时先把 source 光栅化为第 0 级。
+     * 第 0 级不超过请求过的最大尺寸，也不超过缓存上限能放下的尺寸；之后请求更大的尺寸时重新光栅化
+     *
+     * @param key    封面的唯一标识
+     * @param source 原始封面，只在第一次使用该 key 或请求更大的尺寸时光栅化
+     * @param size   显示尺寸（像素）
+     * @return 不小于 size 的最小一级；第 0 级比 size 小时返回第 0 级
+     */
+    public synchronized Bitmap getCover(String key, Drawable source, int size) {
+        Entry entry = entries.get(key);
+        int levelSize = Math.min(size, maxLevelSize());
+        if (entry == null || needsLargerLevel(entry, levelSize,
+                Math.min(source.getIntrinsicWidth(), source.getIntrinsicHeight()))) {
+            entry = new Entry(RotatingProgressDrawable.rasterizeCover(source, levelSize));
+            entries.put(key, entry);
+        }
+        return getLevel(key, entry, size);
+    }
+
+    /**
+     * 获取适合 size 显示的封面，缓存上限放得下的正方形位图直接作为第 0 级，不会拷贝；
+     * 其它位图按照 {@link #getCover(String, Drawable, int)} 的规则缩小
+     *
+     * @see #getCover(String, Drawable, int)
+     */
+    public synchronized Bitmap getCover(String key, Bitmap source, int size) {
+        Entry entry = entries.get(key);
+        int sourceSize = Math.min(source.getWidth(), source.getHeight());
+        int maxLevelSize = maxLevelSize();
+        if (entry == null && source.getWidth() == source.getHeight() && sourceSize <= maxLevelSize) {
+            entry = new Entry(source);
+            entries.put(key, entry);
+        } else if (entry == null || needsLargerLevel(entry, Math.min(size, maxLevelSize), sourceSize)) {
+            entry = new Entry(RotatingProgressDrawable.rasterizeCover(new BitmapDrawable(null, source),
+                    Math.min(size, maxLevelSize)));
+            entries.put(key, entry);
+        }
+        return getLevel(key, entry, size);
+    }
+
+    /**
+     * 只查询已经缓存的封面，不会光栅化原图
+     *
+     * @return 未缓存时返回 null
+     */
+    public synchronized Bitmap getCover(String key, int size) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : getLevel(key, entry, size);
+    }
+
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.evictAll();
+    }
+
+    private Bitmap getLevel(String key, Entry entry, int size) {
+        int level = entry.levelFor(size);
+        if (entry.levels[level] != null) return entry.levels[level];
+        // LruCache 按放入时的大小记账，原地修改不会被计入，新生成的级别放在副本中重新放入
+        Entry grown = new Entry(entry);
+        // 从最近的已有上一级开始逐级减半，中间级一并保留
+        int from = level;
+        while (grown.levels[from] == null) from--;
+        for (int i = from + 1; i <= level; i++) {
+            grown.levels[i] = downscale(grown.levels[i - 1], grown.sizeOf(i));
+            grown.byteCount += grown.levels[i].getByteCount();
+        }
+        entries.put(key, grown);
+        return grown.levels[level];
+    }
+
+    /**
+     * 缓存的第 0 级比请求的尺寸小，而原图还能光栅化出更大的一级
+     */
+    private static boolean needsLargerLevel(Entry entry, int levelSize, int sourceSize) {
+        return entry.baseSize < levelSize && entry.baseSize < sourceSize;
+    }
+
+    /**
+     * 按照 ARGB_8888 计算，缓存上限能放下的最大边长。超过该边长的第 0 级放入后会被立即淘汰
+     */
+    private int maxLevelSize() {
+        return Math.max(MIN_LEVEL_SIZE, (int) Math.sqrt(entries.maxSize() / 4));
+    }
+
+    /**
+     * 当前所有封面各级位图的总大小（字节）
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int maxSize() {
+        return entries.maxSize();
+    }
+
+    private Bitmap downscale(Bitmap source, int size) {
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = Bitmap.createBitmap(size, size, config);
+        scaleRect.set(0, 0, size, size);
+        new Canvas(bitmap).drawBitmap(source, null, scaleRect, scalePaint);
+        return bitmap;
+    }
+
+    private static final class Entry {
+        final Bitmap[] levels;
+        final int baseSize;
+        int byteCount;
+
+        Entry(Bitmap level0) {
+            baseSize = level0.getWidth();
+            int count = 1;
+            while ((baseSize >> count) >= MIN_LEVEL_SIZE) count++;
+            levels = new Bitmap[count];
+            levels[0] = level0;
+            byteCount = level0.getByteCount();
+        }
+
+        Entry(Entry source) {
+            baseSize = source.baseSize;
+            levels = source.levels.clone();
+            byteCount = source.byteCount;
+        }
+
+        int sizeOf(int level) {
+            return baseSize >> level;
+        }
+
+        /**
+         * 不小于 size 的最小一级
+         */
+        int levelFor(int size) {
+            int level = 0;
+            while (level + 1 < levels.length && sizeOf(level + 1) >= size) level++;
+            return level;
+        }
+    }
+}
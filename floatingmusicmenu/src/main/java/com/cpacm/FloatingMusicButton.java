@@ -1,12 +1,22 @@
 package com.cpacm;
 
+import android.app.Activity;
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.content.res.ColorStateList;
 import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Outline;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.InsetDrawable;
+import android.graphics.drawable.LayerDrawable;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewOutlineProvider;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
@@ -25,25 +35,104 @@ import java.lang.reflect.Method;
  */
 public class FloatingMusicButton extends FloatingActionButton {
 
-    private RotatingProgressDrawable coverDrawable;
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 1000;
+
+    private static final String STATE_SUPER = "super_state";
+    private static final String STATE_ROTATION = "rotation";
+    private static final String STATE_PROGRESS = "progress";
+    private static final String STATE_ROTATION_ANGLE = "rotation_angle";
+    static final String STATE_COVER_KEY = "cover_key";
+
+    private static boolean reflectionResolved = false;
+    private static Method sizeMethod;
+    private static Field maxImageSizeField;
+    private static Field implField;
+    private static Method implMaxSizeMethod;
+    private static FrameRatePolicy defaultFrameRatePolicy;
+
+    // 进度和旋转状态可以在任意线程设置，封面只在主线程替换
+    private volatile RotatingProgressDrawable coverDrawable;
     private int percent, color;
     private ColorStateList backgroundHint;
-    private float progress = 0f;
-    private boolean isRotation = false;
+    private volatile float progress = 0f;
+    private volatile float bufferedProgress = 0f;
+    // 拖动预览期间显示预览位置，播放器传入的进度只记录不显示
+    private volatile boolean scrubbing = false;
+    private volatile float scrubProgress = 0f;
+    private int bufferedColor;
+    private int[] progressGradient;
+    private volatile boolean isRotation = false;
+    private boolean coverRestored = false;
+    // 上一次保存状态时 RetainedCoverHolder 返回的 key，再次保存时复用
+    private String retainedKey;
+    private boolean renderingPaused = false;
+    // 为 null 时在第一次使用时取进程内共享的默认策略
+    private FrameRatePolicy frameRatePolicy;
+    private boolean maxImageSizeApplied = false;
+    private boolean autoColor = false;
+    // 自动提取的颜色与用户设置的 color/backgroundHint 分开保存，关闭自动取色后恢复用户的设置
+    private boolean autoColorsApplied = false;
+    private int autoProgressColor;
+    private ColorStateList autoBackgroundHint;
+    private ColorStateList defaultBackgroundTint;
+    // 每次更换封面加一，用于丢弃旧封面的取色结果
+    private int coverGeneration;
+    // 每次请求封面加一，用于丢弃过期的磁盘缓存读取结果
+    private int coverRequest;
+    private String coverKey;
+    private CoverDiskCache diskCache;
+    private CoverStore coverStore;
+    // 当前封面位图由 CoverStore 持有或来源不明，淡出后不能交给调用方复用
+    private boolean coverShared = false;
+    private CoverAtlas coverAtlas;
+    private boolean overdrawOptimized = false;
+    private int coverRenderMode;
+    private boolean backgroundReplaced = false;
+    // 快照导出，只在主线程访问
+    private long snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+    private RotatingProgressDrawable snapshotDrawable;
+    private Bitmap snapshotTarget;
+    private int snapshotVersion;
+    private long snapshotTime;
+
+    // 背景透明后仍然按照背景的形状投射阴影
+    private static final ViewOutlineProvider OPAQUE_BACKGROUND_OUTLINE = new ViewOutlineProvider() {
+        @Override
+        public void getOutline(View view, Outline outline) {
+            ViewOutlineProvider.BACKGROUND.getOutline(view, outline);
+            outline.setAlpha(1f);
+        }
+    };
 
     public FloatingMusicButton(Context context) {
         super(context);
-        setMaxImageSize();
+        init(context);
     }
 
     public FloatingMusicButton(Context context, AttributeSet attrs) {
         super(context, attrs);
-        setMaxImageSize();
+        init(context);
     }
 
     public FloatingMusicButton(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
-        setMaxImageSize();
+        init(context);
+    }
+
+    /**
+     * 构造时不做反射和系统服务查询，分别推迟到第一次测量和第一次使用帧率策略时
+     */
+    private void init(Context context) {
+        coverRenderMode = RotatingProgressDrawable.getDefaultRenderMode();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (!maxImageSizeApplied) {
+            maxImageSizeApplied = true;
+            setMaxImageSize();
+        }
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
     }
 
     @Override
@@ -56,29 +145,58 @@ public class FloatingMusicButton extends FloatingActionButton {
      */
     public void setMaxImageSize() {
         try {
-            Class clazz = getClass().getSuperclass();
-            Method sizeMethod = clazz.getDeclaredMethod("getSizeDimension");
-            sizeMethod.setAccessible(true);
-            int size = (Integer) sizeMethod.invoke(this);
+            if (!resolveReflection()) return;
+            int size = getSizeDimension();
             //set fab maxsize
-            Field field = clazz.getDeclaredField("maxImageSize");
-            field.setAccessible(true);
-            field.setInt(this,size);
+            maxImageSizeField.setInt(this, size);
             //get fab impl
-            Field field2 = clazz.getDeclaredField("impl");
-            field2.setAccessible(true);
-            Object o = field2.get(this);
+            Object o = implField.get(this);
             //set fabimpl maxsize
-            Method maxMethod = o.getClass().getSuperclass().getDeclaredMethod("setMaxImageSize", int.class);
-            maxMethod.setAccessible(true);
-            maxMethod.invoke(o, size);
+            implMaxSizeMethod.invoke(o, size);
 
-        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException | NoSuchFieldException e) {
+        } catch (IllegalAccessException | InvocationTargetException e) {
             e.printStackTrace();
         }
         //postInvalidate();
     }
 
+    /**
+     * fab 的实际尺寸，反射失败时退回到测量宽度
+     */
+    private int getSizeDimension() throws IllegalAccessException, InvocationTargetException {
+        if (resolveReflection()) {
+            return (Integer) sizeMethod.invoke(this);
+        }
+        return getMeasuredWidth();
+    }
+
+    /**
+     * 反射查找的结果在进程内缓存，每个按钮只需要 invoke，不必重复查找
+     */
+    private static synchronized boolean resolveReflection() {
+        if (reflectionResolved) {
+            return implMaxSizeMethod != null;
+        }
+        reflectionResolved = true;
+        try {
+            Class<?> clazz = FloatingActionButton.class;
+            sizeMethod = clazz.getDeclaredMethod("getSizeDimension");
+            sizeMethod.setAccessible(true);
+            maxImageSizeField = clazz.getDeclaredField("maxImageSize");
+            maxImageSizeField.setAccessible(true);
+            implField = clazz.getDeclaredField("impl");
+            implField.setAccessible(true);
+            Class<?> implClass = implField.getType();
+            implMaxSizeMethod = implClass.getDeclaredMethod("setMaxImageSize", int.class);
+            implMaxSizeMethod.setAccessible(true);
+            return true;
+        } catch (NoSuchMethodException | NoSuchFieldException e) {
+            e.printStackTrace();
+            implMaxSizeMethod = null;
+            return false;
+        }
+    }
+
     /**
      * 对fmb进行配置
      *
@@ -96,25 +214,254 @@ public class FloatingMusicButton extends FloatingActionButton {
     public void config() {
         if (coverDrawable != null) {
             coverDrawable.setProgressWidthPercent(percent);
-            coverDrawable.setProgressColor(color);
-            if (backgroundHint != null) {
-                setBackgroundTintList(backgroundHint);
-            }
-            coverDrawable.setProgress(progress);
+            coverDrawable.setProgressColor(getEffectiveProgressColor());
+            coverDrawable.setFrameRatePolicy(getFrameRatePolicy());
+            coverDrawable.setRenderMode(coverRenderMode);
+            applyBackground();
+            coverDrawable.setBufferedColor(bufferedColor);
+            coverDrawable.setProgressGradient(progressGradient);
+            coverDrawable.setProgress(getDisplayedProgress());
+            coverDrawable.setBufferedProgress(bufferedProgress);
             coverDrawable.rotate(isRotation);
             //setMaxImageSize();
         }
     }
 
     /**
-     * 设置进度
+     * 减少过度绘制：封面不透明时按钮背景完全被封面和进度条挡住，
+     * 此时跳过背景的填充，由封面 drawable 只在进度条圆环处绘制背景色。阴影和波纹效果保持不变。
+     *
+     * @param optimized 是否开启，默认关闭
+     */
+    public void setOverdrawOptimized(boolean optimized) {
+        this.overdrawOptimized = optimized;
+        applyBackground();
+    }
+
+    public boolean isOverdrawOptimized() {
+        return overdrawOptimized;
+    }
+
+    /**
+     * 设置封面的绘制方式，默认见 {@link RotatingProgressDrawable#getDefaultRenderMode()}
+     *
+     * @param renderMode {@link RotatingProgressDrawable#RENDER_MODE_SHADER} 或 {@link RotatingProgressDrawable#RENDER_MODE_BAKED}
+     */
+    public void setCoverRenderMode(int renderMode) {
+        this.coverRenderMode = renderMode;
+        if (coverDrawable != null) {
+            coverDrawable.setRenderMode(renderMode);
+        }
+    }
+
+    public int getCoverRenderMode() {
+        return coverRenderMode;
+    }
+
+    /**
+     * 设置两次导出快照的最小间隔，默认为 {@link #DEFAULT_SNAPSHOT_INTERVAL}
+     *
+     * @param intervalMillis 小于等于 0 时只跳过没有变化的画面
+     */
+    public void setSnapshotInterval(long intervalMillis) {
+        this.snapshotInterval = Math.max(0, intervalMillis);
+    }
+
+    /**
+     * 把当前的封面、旋转角度和进度条导出到 target，用于在通知栏和桌面小部件中显示与按钮一致的画面。
+     * 画面与上一次导出相比没有变化，或者距离上一次导出不足 {@link #setSnapshotInterval(long)} 时不会绘制，
+     * 调用方只在返回 true 时更新 RemoteViews。只能在主线程调用。
+     *
+     * @param target 通过 {@link RotatingProgressDrawable#createSnapshotBitmap(int, Bitmap.Config)} 创建并复用的位图
+     * @return 是否绘制了新的一帧
+     */
+    public boolean exportSnapshot(Bitmap target) {
+        RotatingProgressDrawable drawable = coverDrawable;
+        if (drawable == null) return false;
+        // 先记录版本再绘制，绘制期间的变化留给下一次导出
+        int version = drawable.getContentVersion();
+        boolean sameTarget = target == snapshotTarget;
+        if (sameTarget && drawable == snapshotDrawable && version == snapshotVersion) return false;
+        long now = SystemClock.uptimeMillis();
+        if (sameTarget && now - snapshotTime < snapshotInterval) return false;
+        if (!drawable.drawSnapshot(target)) return false;
+        snapshotDrawable = drawable;
+        snapshotTarget = target;
+        snapshotVersion = version;
+        snapshotTime = now;
+        return true;
+    }
+
+    /**
+     * 根据当前封面是否不透明决定由按钮背景还是由封面的圆环绘制背景色
+     */
+    private void applyBackground() {
+        ColorStateList tint = autoColorsApplied ? autoBackgroundHint : backgroundHint;
+        if (tint != null) {
+            setBackgroundTintList(tint);
+        }
+        Drawable fill = getBackgroundFill();
+        boolean replace = overdrawOptimized && fill != null
+                && coverDrawable != null && coverDrawable.isCoverOpaque();
+        if (replace != backgroundReplaced) {
+            backgroundReplaced = replace;
+            // 透明度为 0 的填充会被直接跳过，波纹效果不受影响
+            if (fill != null) {
+                fill.setAlpha(replace ? 0 : 0xFF);
+            }
+            setOutlineProvider(replace ? OPAQUE_BACKGROUND_OUTLINE : ViewOutlineProvider.BACKGROUND);
+        }
+        if (coverDrawable == null) return;
+        ColorStateList trackTint = getBackgroundTintList();
+        coverDrawable.setTrackColor(replace && trackTint != null
+                ? trackTint.getColorForState(getDrawableState(), trackTint.getDefaultColor()) : Color.TRANSPARENT);
+    }
+
+    /**
+     * fab 背景中的填充层（波纹效果之下的第一层），找不到时返回 null
+     */
+    private Drawable getBackgroundFill() {
+        Drawable background = getBackground();
+        if (background instanceof InsetDrawable) {
+            background = ((InsetDrawable) background).getDrawable();
+        }
+        if (background instanceof LayerDrawable && ((LayerDrawable) background).getNumberOfLayers() > 0) {
+            return ((LayerDrawable) background).getDrawable(0);
+        }
+        return null;
+    }
+
+    /**
+     * ImageView 设置图片时会重置图片的可见状态，暂停期间需要重新应用
+     */
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        super.setImageDrawable(drawable);
+        if (renderingPaused && drawable != null) {
+            drawable.setVisible(false, false);
+        }
+    }
+
+    /**
+     * 暂停或恢复封面的旋转与进度绘制，例如菜单被滑动隐藏时
+     *
+     * @param paused 是否暂停
+     */
+    public void pauseRendering(boolean paused) {
+        renderingPaused = paused;
+        if (coverDrawable != null) {
+            coverDrawable.setVisible(!paused, false);
+        }
+    }
+
+    /**
+     * 设置封面旋转的帧率策略，默认在省电模式和温控时降低帧率
+     *
+     * @param policy 帧率策略，为 null 时恢复默认策略
+     */
+    public void setFrameRatePolicy(FrameRatePolicy policy) {
+        this.frameRatePolicy = policy;
+        if (coverDrawable != null) {
+            coverDrawable.setFrameRatePolicy(getFrameRatePolicy());
+        }
+    }
+
+    public FrameRatePolicy getFrameRatePolicy() {
+        if (frameRatePolicy == null) {
+            frameRatePolicy = getDefaultFrameRatePolicy(getContext());
+        }
+        return frameRatePolicy;
+    }
+
+    /**
+     * 所有按钮共用的默认策略，省电模式和温控时降低帧率
+     */
+    private static synchronized FrameRatePolicy getDefaultFrameRatePolicy(Context context) {
+        if (defaultFrameRatePolicy == null) {
+            defaultFrameRatePolicy = FrameRatePolicy.powerAware(AndroidPowerStateSource.get(context));
+        }
+        return defaultFrameRatePolicy;
+    }
+
+    /**
+     * 设置进度，可以在任意线程调用
      *
      * @param progress
      */
     public void setProgress(float progress) {
         this.progress = progress;
+        RotatingProgressDrawable drawable = coverDrawable;
+        if (drawable != null && !scrubbing) {
+            drawable.setProgress(progress);
+        }
+    }
+
+    /**
+     * 进入或更新拖动预览，进度条显示预览位置，直到 {@link #endScrub(float)}
+     *
+     * @param progress 0-100
+     */
+    void setScrubProgress(float progress) {
+        scrubProgress = progress;
+        scrubbing = true;
+        RotatingProgressDrawable drawable = coverDrawable;
+        if (drawable != null) {
+            drawable.setProgress(progress);
+        }
+    }
+
+    /**
+     * 结束拖动预览，之后重新显示播放器传入的进度
+     *
+     * @param progress 松手时的位置，在播放器回调新的进度之前一直显示该位置
+     */
+    void endScrub(float progress) {
+        this.progress = progress;
+        scrubbing = false;
+        RotatingProgressDrawable drawable = coverDrawable;
+        if (drawable != null) {
+            drawable.setProgress(progress);
+        }
+    }
+
+    private float getDisplayedProgress() {
+        return scrubbing ? scrubProgress : progress;
+    }
+
+    /**
+     * 设置缓冲进度，可以在任意线程调用
+     *
+     * @param bufferedProgress 0-100
+     */
+    public void setBufferedProgress(float bufferedProgress) {
+        this.bufferedProgress = bufferedProgress;
+        RotatingProgressDrawable drawable = coverDrawable;
+        if (drawable != null) {
+            drawable.setBufferedProgress(bufferedProgress);
+        }
+    }
+
+    /**
+     * 设置缓冲进度条颜色，为 0 时使用半透明的进度条颜色
+     *
+     * @param bufferedColor
+     */
+    public void setBufferedColor(int bufferedColor) {
+        this.bufferedColor = bufferedColor;
+        if (coverDrawable != null) {
+            coverDrawable.setBufferedColor(bufferedColor);
+        }
+    }
+
+    /**
+     * 设置已播放部分的渐变色，传入 null 时使用纯色
+     *
+     * @param colors 渐变色
+     */
+    public void setProgressGradient(int[] colors) {
+        this.progressGradient = colors;
         if (coverDrawable != null) {
-            coverDrawable.setProgress(progress);
+            coverDrawable.setProgressGradient(colors);
         }
     }
 
@@ -124,42 +471,416 @@ public class FloatingMusicButton extends FloatingActionButton {
      * @param drawable
      */
     public void setCoverDrawable(Drawable drawable) {
-        this.coverDrawable = new RotatingProgressDrawable(drawable);
-        config();
-        setImageDrawable(this.coverDrawable);
-        postInvalidate();
+        setCoverDrawable(drawable, null);
+    }
+
+    /**
+     * 设置按钮背景
+     *
+     * @param drawable
+     * @param coverKey 封面的唯一标识，用于缓存自动提取的颜色，为 null 时不缓存
+     */
+    public void setCoverDrawable(final Drawable drawable, final String coverKey) {
+        if (coverAtlas != null && coverKey != null) {
+            CoverAtlas.Region region = coverAtlas.acquire(coverKey, drawable);
+            if (region != null) {
+                applyCover(RotatingProgressDrawable.fromAtlasRegion(region), coverKey);
+                return;
+            }
+        }
+        if (coverStore != null && coverKey != null) {
+            applyCover(RotatingProgressDrawable.fromRasterizedCover(
+                    coverStore.getCover(coverKey, drawable, getCoverDisplaySize())), coverKey, true);
+            return;
+        }
+        if (diskCache != null && coverKey != null) {
+            // 在后台线程读取，期间保持旧封面；读取完成前又设置了其它封面时丢弃结果
+            final CoverDiskCache cache = diskCache;
+            final int generation = ++coverRequest;
+            cache.get(coverKey, new CoverDiskCache.Callback() {
+                @Override
+                public void onCoverLoaded(Bitmap cached) {
+                    if (generation != coverRequest) return;
+                    if (cached == null) {
+                        cached = RotatingProgressDrawable.rasterizeCover(drawable, getCoverDisplaySize());
+                        cache.put(coverKey, cached);
+                    }
+                    applyCover(RotatingProgressDrawable.fromRasterizedCover(cached), coverKey);
+                }
+            });
+            return;
+        }
+        applyCover(new RotatingProgressDrawable(drawable),
+                coverKey);
+    }
+
+    /**
+     * 设置磁盘缓存，设置后带 key 的封面会按照显示尺寸缩小后缓存到磁盘
+     *
+     * @param diskCache 为 null 时不使用磁盘缓存
+     */
+    public void setCoverDiskCache(CoverDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * 设置多尺寸封面缓存，设置后带 key 的封面只光栅化一次，不同尺寸的按钮共用缩小后的各级位图。
+     * 优先于磁盘缓存使用。
+     *
+     * @param coverStore 为 null 时不使用
+     */
+    public void setCoverStore(CoverStore coverStore) {
+        this.coverStore = coverStore;
+    }
+
+    /**
+     * 设置封面图集，适用于列表或网格中大量的小按钮。设置后带 key 的封面会绘制到图集中共享的大位图里，
+     * 图集已满时退回到 {@link #setCoverStore} 或单独的位图
+     *
+     * @param coverAtlas 为 null 时不使用
+     */
+    public void setCoverAtlas(CoverAtlas coverAtlas) {
+        this.coverAtlas = coverAtlas;
+    }
+
+    /**
+     * 在后台线程从磁盘缓存中读取封面，不会访问原图；命中时设置为封面
+     *
+     * @param coverKey 封面的唯一标识
+     * @param callback 读取完成后在主线程回调，未命中时为 null，可以为 null
+     */
+    public void setCoverFromCache(final String coverKey, final CoverDiskCache.Callback callback) {
+        if (diskCache == null || coverKey == null) {
+            if (callback != null) {
+                callback.onCoverLoaded(null);
+            }
+            return;
+        }
+        final int generation = ++coverRequest;
+        diskCache.get(coverKey, new CoverDiskCache.Callback() {
+            @Override
+            public void onCoverLoaded(Bitmap cached) {
+                if (cached != null && generation == coverRequest) {
+                    applyCover(RotatingProgressDrawable.fromRasterizedCover(cached), coverKey);
+                }
+                if (callback != null) {
+                    callback.onCoverLoaded(cached);
+                }
+            }
+        });
+    }
+
+    private int getCoverDisplaySize() {
+        try {
+            int size = getSizeDimension();
+            if (size > 0) return size;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            e.printStackTrace();
+        }
+        return Math.round(56 * getResources().getDisplayMetrics().density);
     }
 
     public void setCover(Bitmap bitmap) {
-        coverDrawable = new RotatingProgressDrawable(getResources(),bitmap);
+        setCover(bitmap, null);
+    }
+
+    /**
+     * @param bitmap
+     * @param coverKey 封面的唯一标识，用于缓存自动提取的颜色，为 null 时不缓存
+     */
+    public void setCover(Bitmap bitmap, String coverKey) {
+        if (coverAtlas != null && coverKey != null) {
+            CoverAtlas.Region region = coverAtlas.acquire(coverKey, bitmap);
+            if (region != null) {
+                applyCover(RotatingProgressDrawable.fromAtlasRegion(region), coverKey);
+                return;
+            }
+        }
+        if (coverStore != null && coverKey != null) {
+            applyCover(RotatingProgressDrawable.fromRasterizedCover(
+                    coverStore.getCover(coverKey, bitmap, getCoverDisplaySize())), coverKey, true);
+            return;
+        }
+        if (diskCache != null && coverKey != null) {
+            setCoverDrawable(new BitmapDrawable(getResources(), bitmap), coverKey);
+            return;
+        }
+        applyCover(new RotatingProgressDrawable(getResources(), bitmap),
+                coverKey);
+    }
+
+    /**
+     * 只应用两个状态之间发生变化的部分，在主线程调用
+     *
+     * @param previous 上一次应用的状态，第一次为 null
+     * @param next     新的状态
+     */
+    void applyState(NowPlayingState previous, NowPlayingState next) {
+        boolean styleChanged = false;
+        if (next.progressColor != null && next.progressColor != color) {
+            color = next.progressColor;
+            styleChanged = true;
+        }
+        if (next.backgroundTint != null && !next.backgroundTint.equals(backgroundHint)) {
+            backgroundHint = next.backgroundTint;
+            styleChanged = true;
+        }
+        progress = next.progress;
+        bufferedProgress = next.bufferedProgress;
+        isRotation = next.playing;
+        if (next.hasCover() && (previous == null || !next.hasSameCover(previous))) {
+            // 设置封面时会通过 config() 一次性应用进度、颜色和旋转状态
+            if (next.animatedCover != null) {
+                setAnimatedCover(next.animatedCover);
+            } else if (next.coverBitmap != null && next.crossfadeMillis > 0) {
+                // 淡入不会重建 drawable，进度等其它变化需要另外应用
+                crossfadeCover(next.coverBitmap, next.coverKey, next.crossfadeMillis, null);
+                config();
+            } else if (next.coverBitmap != null) {
+                setCover(next.coverBitmap, next.coverKey);
+            } else {
+                setCoverDrawable(next.coverDrawable, next.coverKey);
+            }
+            return;
+        }
+        RotatingProgressDrawable drawable = coverDrawable;
+        if (drawable == null) return;
+        if (styleChanged) {
+            drawable.setProgressColor(getEffectiveProgressColor());
+            applyBackground();
+        }
+        if ((previous == null || previous.progress != next.progress) && !scrubbing) {
+            drawable.setProgress(next.progress);
+        }
+        if (previous == null || previous.bufferedProgress != next.bufferedProgress) {
+            drawable.setBufferedProgress(next.bufferedProgress);
+        }
+        if (previous == null || previous.playing != next.playing) {
+            drawable.rotate(next.playing);
+        }
+    }
+
+    /**
+     * 淡入切换封面，旋转角度和进度保持不变，不会创建新的 drawable；还没有封面时直接设置
+     *
+     * @param bitmap         新封面
+     * @param coverKey       封面的唯一标识，为 null 时不缓存自动提取的颜色
+     * @param durationMillis 淡入时长
+     * @param listener       旧封面位图不再使用时回调，可用于复用位图，可以为 null
+     */
+    public void crossfadeCover(Bitmap bitmap, String coverKey, long durationMillis,
+                               RotatingProgressDrawable.OnCoverReleasedListener listener) {
+        if (coverDrawable == null) {
+            setCover(bitmap, coverKey);
+            return;
+        }
+        boolean shared = coverStore != null && coverKey != null;
+        if (shared) {
+            bitmap = coverStore.getCover(coverKey, bitmap, getCoverDisplaySize());
+        }
+        // 淡出的是旧封面，旧封面由 CoverStore 共享时不能交给调用方复用
+        coverDrawable.crossfadeTo(bitmap, durationMillis, coverShared ? null : listener);
+        coverShared = shared;
+        applyBackground();
+        this.coverKey = coverKey;
+        coverGeneration++;
+        coverRequest++;
+        extractCoverColors();
+    }
+
+    /**
+     * 设置动态封面（例如 GIF），帧在后台线程按照按钮尺寸提前绘制
+     *
+     * @param cover 帧来源，更换封面时自动释放
+     */
+    public void setAnimatedCover(AnimatedCover cover) {
+        applyCover(RotatingProgressDrawable.fromAnimatedCover(cover, getCoverDisplaySize()), null);
+    }
+
+    private void applyCover(RotatingProgressDrawable drawable, String coverKey) {
+        applyCover(drawable, coverKey, false);
+    }
+
+    /**
+     * @param shared 封面位图是否由 {@link CoverStore} 共享
+     */
+    private void applyCover(RotatingProgressDrawable drawable, String coverKey, boolean shared) {
+        coverRequest++;
+        coverShared = shared;
+        if (coverDrawable != null) {
+            coverDrawable.rotate(false);
+            coverDrawable.releaseResources();
+        }
+        coverDrawable = drawable;
+        snapshotDrawable = null;
+        this.coverKey = coverKey;
+        coverGeneration++;
         config();
         setImageDrawable(this.coverDrawable);
         postInvalidate();
+        extractCoverColors();
+    }
+
+    private int getEffectiveProgressColor() {
+        return autoColorsApplied ? autoProgressColor : color;
     }
 
+    /**
+     * 是否根据封面自动设置进度条颜色和按钮背景色，关闭后恢复通过 {@link #config(int, int, ColorStateList)} 设置的颜色
+     *
+     * @param autoColor
+     */
+    public void setAutoColor(boolean autoColor) {
+        this.autoColor = autoColor;
+        if (!autoColor && autoColorsApplied) {
+            autoColorsApplied = false;
+            if (backgroundHint == null && defaultBackgroundTint != null) {
+                setBackgroundTintList(defaultBackgroundTint);
+            }
+            config();
+        }
+        extractCoverColors();
+    }
+
+    /**
+     * 在后台线程提取封面颜色，完成后在主线程一次性应用；封面已经更换时丢弃结果
+     */
+    private void extractCoverColors() {
+        if (!autoColor || coverDrawable == null) return;
+        Bitmap cover = coverDrawable.getCoverBitmap();
+        if (cover == null) return;
+        final int generation = coverGeneration;
+        // 只有调用方提供的 key 才能保证唯一，没有 key 时每次都重新提取
+        CoverColorExtractor.extract(coverKey, cover, new CoverColorExtractor.Callback() {
+            @Override
+            public void onColorsExtracted(int progressColor, int backgroundColor) {
+                if (!autoColor || generation != coverGeneration) return;
+                if (!autoColorsApplied) {
+                    defaultBackgroundTint = getBackgroundTintList();
+                }
+                autoColorsApplied = true;
+                autoProgressColor = progressColor;
+                autoBackgroundHint = ColorStateList.valueOf(backgroundColor);
+                config();
+            }
+        });
+    }
+
+    /**
+     * 开始或停止旋转，可以在任意线程调用
+     *
+     * @param rotate
+     */
     public void rotate(boolean rotate) {
-        coverDrawable.rotate(rotate);
         isRotation = rotate;
+        RotatingProgressDrawable drawable = coverDrawable;
+        if (drawable != null) {
+            drawable.rotate(rotate);
+        }
+    }
+
+    /**
+     * 页面因为配置变更重建时保留的封面会在新的页面中取回；其它情况（例如页面已经结束）下不会再被取回，
+     * 离开窗口时直接丢弃，不让位图留在进程级的容器中
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (retainedKey == null) return;
+        Activity activity = findActivity();
+        if (activity != null && activity.isChangingConfigurations()) return;
+        RetainedCoverHolder.take(retainedKey);
+        retainedKey = null;
+    }
+
+    private Activity findActivity() {
+        Context context = getContext();
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) return (Activity) context;
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
     }
 
     @Override
     protected Parcelable onSaveInstanceState() {
-        super.onSaveInstanceState();
         Bundle bundle = new Bundle();
-        bundle.putBoolean("rotation", isRotation);
-        bundle.putFloat("progress", progress);
-        if (coverDrawable != null) {
-            bundle.putFloat("rotation_angle", coverDrawable.getRotation());
-        }
+        bundle.putParcelable(STATE_SUPER, super.onSaveInstanceState());
+        saveCoverState(bundle);
         return bundle;
     }
 
     @Override
     protected void onRestoreInstanceState(Parcelable state) {
-        super.onRestoreInstanceState(state);
+        if (!(state instanceof Bundle)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
         Bundle bundle = (Bundle) state;
-        isRotation = bundle.getBoolean("rotation");
-        progress = bundle.getFloat("progress");
-        requestLayout();
+        super.onRestoreInstanceState(bundle.getParcelable(STATE_SUPER));
+        restoreCoverState(bundle);
+    }
+
+    /**
+     * 保存旋转角度、进度和旋转状态，已经光栅化的封面交给 {@link RetainedCoverHolder} 保留
+     *
+     * @param bundle 状态容器
+     */
+    void saveCoverState(Bundle bundle) {
+        bundle.putBoolean(STATE_ROTATION, isRotation);
+        bundle.putFloat(STATE_PROGRESS, progress);
+        if (coverDrawable != null) {
+            bundle.putFloat(STATE_ROTATION_ANGLE, coverDrawable.getRotation());
+        }
+        // 动态封面的帧位图会被复用，不保留，恢复后需要重新设置
+        if (coverDrawable != null && coverDrawable.getCoverBitmap() != null) {
+            retainedKey = RetainedCoverHolder.retain(retainedKey, coverDrawable.getCoverBitmap(),
+                    coverKey, percent, color, backgroundHint);
+            bundle.putString(STATE_COVER_KEY, retainedKey);
+        } else if (retainedKey != null) {
+            // 之前保留的静态封面已经过期
+            RetainedCoverHolder.take(retainedKey);
+            retainedKey = null;
+        }
+    }
+
+    /**
+     * 恢复状态，如果封面仍被保留则直接复用，不会重新解码和光栅化
+     *
+     * @param bundle {@link #saveCoverState(Bundle)} 保存的状态
+     */
+    void restoreCoverState(Bundle bundle) {
+        isRotation = bundle.getBoolean(STATE_ROTATION);
+        progress = bundle.getFloat(STATE_PROGRESS);
+        RetainedCoverHolder.Entry entry = RetainedCoverHolder.take(bundle.getString(STATE_COVER_KEY));
+        if (entry != null) {
+            percent = entry.percent;
+            color = entry.color;
+            backgroundHint = entry.backgroundHint;
+            if (coverDrawable != null) {
+                coverDrawable.rotate(false);
+                coverDrawable.releaseResources();
+            }
+            coverDrawable = RotatingProgressDrawable.fromRasterizedCover(entry.cover);
+            // 保留的位图可能来自 CoverStore，不确定时按共享处理
+            coverShared = true;
+            snapshotDrawable = null;
+            coverKey = entry.coverKey;
+            coverGeneration++;
+            coverRequest++;
+            setImageDrawable(coverDrawable);
+            coverRestored = true;
+        }
+        if (coverDrawable != null) {
+            coverDrawable.setRotation(bundle.getFloat(STATE_ROTATION_ANGLE));
+        }
+        config();
+    }
+
+    /**
+     * 封面是否从保留的状态中恢复
+     */
+    public boolean isCoverRestored() {
+        return coverRestored;
     }
 }
@@ -4,28 +4,49 @@ import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
+import android.graphics.BlurMaskFilter;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.os.SystemClock;
 
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.core.view.ViewCompat;
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
+import androidx.customview.widget.ExploreByTouchHelper;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.accessibility.AccessibilityEvent;
 import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.view.animation.OvershootInterpolator;
+import android.widget.Button;
 
 import com.cpacm.floatingmusicbutton.R;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * <p>
  * 浮动音乐菜单，可以显示歌曲封面和旋转动画并随着音乐显示进度。
@@ -61,8 +82,11 @@ public class FloatingMusicMenu extends ViewGroup {
     public final static int FLOATING_DIRECTION_LEFT = 1;
     public final static int FLOATING_DIRECTION_DOWN = 2;
     public final static int FLOATING_DIRECTION_RIGHT = 3;
+    public final static long DEFAULT_SEEK_INTERVAL = 250;
 
     private static final int SHADOW_OFFSET = 20;
+    private static final String STATE_SUPER = "super_state";
+    private static final String STATE_BUTTON = "button_state";
 
     private FloatingMusicButton floatingMusicButton;
     private AnimatorSet showAnimation;
@@ -70,13 +94,76 @@ public class FloatingMusicMenu extends ViewGroup {
 
     private int progressWidthPercent;
     private int progressColor;
+    private int bufferedColor;
+    private boolean autoColor;
+    private boolean overdrawOptimized;
+    private int coverRenderMode;
+
+    // 正在播放的状态，任意线程提交，下一帧在主线程统一应用
+    private final AtomicReference<NowPlayingState> pendingState = new AtomicReference<>();
+    private NowPlayingState appliedState;
+    private final Runnable applyStateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingState();
+        }
+    };
     private float progress;
+
+    // 拖动预览，只在主线程访问
+    private OnSeekListener seekListener;
+    private long seekInterval = DEFAULT_SEEK_INTERVAL;
+    private boolean scrubbing;
+    private float scrubProgress;
+    private float lastSeekProgress;
+    private long lastSeekTime;
+    // 本次拖动是否已经 seek 过，第一次 scrubTo 不受间隔限制
+    private boolean seeked;
+    private boolean seekPending;
+    private final Runnable seekRunnable = new Runnable() {
+        @Override
+        public void run() {
+            seekPending = false;
+            dispatchSeek();
+        }
+    };
     private float buttonInterval;
     private ColorStateList backgroundTint;
     private Drawable cover;
     private boolean isExpanded;
     private boolean isHided;
     private int floatingDirection;
+    private MenuLayoutStrategy layoutStrategy;
+    private final MenuLayoutStrategy.Items layoutItems = new MenuLayoutStrategy.Items();
+    private final int[] measuredSize = new int[2];
+
+    // 拖动，只在主线程访问；拖动过程中只修改平移，不会重新测量布局
+    private static final float SNAP_MARGIN_DP = 16;
+    private static final long SNAP_DURATION = 200;
+    private boolean draggable;
+    private boolean dragTracking;
+    private boolean dragging;
+    private float dragDownX, dragDownY;
+    private float dragStartTranslationX, dragStartTranslationY;
+    private int touchSlop;
+    // 可拖动时预先计算四个方向的直线排列，松手切换方向时只需重新摆放子控件
+    private final MenuLayoutStrategy.Items[] directionItems = {
+            new MenuLayoutStrategy.Items(), new MenuLayoutStrategy.Items(),
+            new MenuLayoutStrategy.Items(), new MenuLayoutStrategy.Items()
+    };
+
+    // 虚拟菜单项
+    private static final int VIRTUAL_ITEM_SIZE_DP = 40;
+    private static final int VIRTUAL_ICON_SIZE_DP = 24;
+    private static final int VIRTUAL_SHADOW_RADIUS_DP = 3;
+    private static final int VIRTUAL_SHADOW_COLOR = 0x40000000;
+    // 按直径缓存的虚拟菜单项阴影，离开窗口时释放
+    private final SparseArray<Bitmap> shadowBitmaps = new SparseArray<>();
+    private final List<VirtualMenuItem> virtualItems = new ArrayList<>();
+    private Paint virtualItemPaint;
+    private Paint virtualShadowPaint;
+    private VirtualMenuItem pressedItem;
+    private VirtualItemAccessibilityHelper accessibilityHelper;
 
     public FloatingMusicMenu(Context context) {
         this(context, null);
@@ -112,14 +199,23 @@ public class FloatingMusicMenu extends ViewGroup {
         cover = attr.getDrawable(R.styleable.FloatingMusicMenu_fmm_cover);
         backgroundTint = attr.getColorStateList(R.styleable.FloatingMusicMenu_fmm_backgroundTint);
         floatingDirection = attr.getInteger(R.styleable.FloatingMusicMenu_fmm_floating_direction, 0);
+        bufferedColor = attr.getColor(R.styleable.FloatingMusicMenu_fmm_buffered_color, 0);
+        autoColor = attr.getBoolean(R.styleable.FloatingMusicMenu_fmm_auto_color, false);
+        overdrawOptimized = attr.getBoolean(R.styleable.FloatingMusicMenu_fmm_overdraw_optimized, false);
+        coverRenderMode = attr.getInt(R.styleable.FloatingMusicMenu_fmm_render_mode, RotatingProgressDrawable.getDefaultRenderMode());
         attr.recycle();
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
         createRootButton(context);
-        addScrollAnimation();
     }
 
-    private void addScrollAnimation() {
+    /**
+     * 隐藏/显示动画只有在第一次调用 {@link #hide()} 或 {@link #show()} 时才创建。
+     * 动画只指定终点，被打断时从当前透明度继续，不会跳回起点重新开始。
+     */
+    private void ensureScrollAnimation() {
+        if (showAnimation != null) return;
         showAnimation = new AnimatorSet().setDuration(ANIMATION_DURATION);
-        showAnimation.play(ObjectAnimator.ofFloat(this, View.ALPHA, 0f, 1f));
+        showAnimation.play(ObjectAnimator.ofFloat(this, View.ALPHA, 1f));
         showAnimation.setInterpolator(alphaExpandInterpolator);
         showAnimation.addListener(new AnimatorListenerAdapter() {
             @Override
@@ -132,17 +228,33 @@ public class FloatingMusicMenu extends ViewGroup {
             public void onAnimationStart(Animator animation) {
                 super.onAnimationStart(animation);
                 setVisibility(VISIBLE);
+                floatingMusicButton.pauseRendering(false);
             }
         });
 
         hideAnimation = new AnimatorSet().setDuration(ANIMATION_DURATION);
-        hideAnimation.play(ObjectAnimator.ofFloat(this, View.ALPHA, 1f, 0f));
+        hideAnimation.play(ObjectAnimator.ofFloat(this, View.ALPHA, 0f));
         hideAnimation.setInterpolator(alphaExpandInterpolator);
         hideAnimation.addListener(new AnimatorListenerAdapter() {
+            private boolean canceled;
+
+            @Override
+            public void onAnimationStart(Animator animation) {
+                canceled = false;
+            }
+
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                canceled = true;
+            }
+
             @Override
             public void onAnimationEnd(Animator animation) {
                 super.onAnimationEnd(animation);
+                if (canceled) return;
                 setVisibility(INVISIBLE);
+                // 隐藏后停止封面的旋转和进度重绘
+                floatingMusicButton.pauseRendering(true);
             }
         });
     }
@@ -156,9 +268,21 @@ public class FloatingMusicMenu extends ViewGroup {
             }
         });
         floatingMusicButton.config(progressWidthPercent, progressColor, backgroundTint);
+        floatingMusicButton.setBufferedColor(bufferedColor);
+        floatingMusicButton.setAutoColor(autoColor);
+        floatingMusicButton.setOverdrawOptimized(overdrawOptimized);
+        floatingMusicButton.setCoverRenderMode(coverRenderMode);
         floatingMusicButton.setProgress(progress);
+    }
+
+    /**
+     * xml 中设置的封面延迟到第一次测量时再光栅化，如果在此之前已经调用过 {@link #setMusicCover}
+     * 则直接丢弃，避免无用的绘制
+     */
+    private void applyPendingCover() {
         if (cover != null) {
             floatingMusicButton.setCoverDrawable(cover);
+            cover = null;
         }
     }
 
@@ -170,260 +294,951 @@ public class FloatingMusicMenu extends ViewGroup {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        applyPendingCover();
         measureChildren(widthMeasureSpec, heightMeasureSpec);
-        switch (floatingDirection) {
-            case FLOATING_DIRECTION_UP:
-            case FLOATING_DIRECTION_DOWN:
-                onMeasureVerticalDirection();
-                break;
-            case FLOATING_DIRECTION_LEFT:
-            case FLOATING_DIRECTION_RIGHT:
-                onMeasureHorizontalDirection();
-                break;
+        if (isDirectionLayoutPrecomputed()) {
+            // 取四个方向的最大尺寸，切换方向时菜单的大小不变，不需要重新测量
+            int width = 0;
+            int height = 0;
+            for (int direction = 0; direction < directionItems.length; direction++) {
+                MenuLayoutStrategy strategy = MenuLayoutStrategy.linear(direction);
+                collectLayoutItems(strategy, directionItems[direction]);
+                strategy.measure(directionItems[direction], measuredSize);
+                width = Math.max(width, measuredSize[0]);
+                height = Math.max(height, measuredSize[1]);
+            }
+            setMeasuredDimension(width, height);
+            return;
         }
+        MenuLayoutStrategy strategy = getLayoutStrategy();
+        collectLayoutItems(strategy, layoutItems);
+        strategy.measure(layoutItems, measuredSize);
+        setMeasuredDimension(measuredSize[0], measuredSize[1]);
     }
 
     /**
-     * 计算竖向排列时需要的大小
+     * 可拖动且使用直线排列时，四个方向的布局结果都预先计算好
      */
-    private void onMeasureVerticalDirection() {
-        int width = 0;
-        int height = 0;
-        for (int i = 0; i < getChildCount(); i++) {
-            View child = getChildAt(i);
+    private boolean isDirectionLayoutPrecomputed() {
+        return draggable && layoutStrategy == null;
+    }
+
+    /**
+     * 按照离根按钮由近到远的顺序收集子按钮和虚拟菜单项的尺寸，数组在数量不变时复用
+     */
+    private void collectLayoutItems(MenuLayoutStrategy strategy, MenuLayoutStrategy.Items items) {
+        int childCount = getChildCount();
+        View root = getChildAt(childCount - 1);
+        items.ensureCapacity(childCount + virtualItems.size());
+        items.rootWidth = root.getMeasuredWidth();
+        items.rootHeight = root.getMeasuredHeight();
+        items.interval = buttonInterval;
+        items.padding = SHADOW_OFFSET;
+        boolean firstNearest = strategy.isFirstChildNearest();
+        int count = 0;
+        for (int i = 0; i < childCount - 1; i++) {
+            View child = getChildAt(firstNearest ? i : childCount - 2 - i);
             if (child.getVisibility() == GONE)
                 continue;
-            width = Math.max(child.getMeasuredWidth(), width);
-            height += child.getMeasuredHeight();
+            items.widths[count] = child.getMeasuredWidth();
+            items.heights[count] = child.getMeasuredHeight();
+            count++;
+        }
+        int virtualSize = getVirtualItemSize();
+        for (int i = 0; i < virtualItems.size(); i++) {
+            items.widths[count] = virtualSize;
+            items.heights[count] = virtualSize;
+            count++;
+        }
+        items.count = count;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (isDirectionLayoutPrecomputed()) {
+            for (int direction = 0; direction < directionItems.length; direction++) {
+                MenuLayoutStrategy strategy = MenuLayoutStrategy.linear(direction);
+                collectLayoutItems(strategy, directionItems[direction]);
+                strategy.layout(directionItems[direction], r - l, b - t);
+            }
+            applyLayout(MenuLayoutStrategy.linear(floatingDirection), directionItems[floatingDirection]);
+            return;
         }
-        width += SHADOW_OFFSET * 2;
-        height += SHADOW_OFFSET * 2;
-        height += buttonInterval * (getChildCount() - 1);
-        height = adjustShootLength(height);
-        setMeasuredDimension(width, height);
+        MenuLayoutStrategy strategy = getLayoutStrategy();
+        collectLayoutItems(strategy, layoutItems);
+        strategy.layout(layoutItems, r - l, b - t);
+        applyLayout(strategy, layoutItems);
     }
 
     /**
-     * 计算横向排列时需要的大小
+     * 按照布局结果摆放子控件，尺寸都来自上一次测量，不会触发重新测量
      */
-    private void onMeasureHorizontalDirection() {
-        int width = 0;
-        int height = 0;
-        for (int i = 0; i < getChildCount(); i++) {
-            View child = getChildAt(i);
+    private void applyLayout(MenuLayoutStrategy strategy, MenuLayoutStrategy.Items items) {
+        int childCount = getChildCount();
+        View root = getChildAt(childCount - 1);
+        root.layout(items.rootLeft, items.rootTop,
+                items.rootLeft + root.getMeasuredWidth(), items.rootTop + root.getMeasuredHeight());
+        boolean firstNearest = strategy.isFirstChildNearest();
+        int index = 0;
+        for (int i = 0; i < childCount - 1; i++) {
+            View child = getChildAt(firstNearest ? i : childCount - 2 - i);
             if (child.getVisibility() == GONE)
                 continue;
-            height = Math.max(child.getMeasuredHeight(), height);
-            width += child.getMeasuredWidth();
+            child.layout(items.lefts[index], items.tops[index],
+                    items.lefts[index] + items.widths[index], items.tops[index] + items.heights[index]);
+            MenuLayoutParams params = (MenuLayoutParams) child.getLayoutParams();
+            params.collapsedX = items.collapsedX[index];
+            params.collapsedY = items.collapsedY[index];
+            index++;
+        }
+        // 虚拟菜单项排在子按钮之后，收缩时的位移与子按钮的计算方式一致
+        for (int i = 0; i < virtualItems.size(); i++, index++) {
+            VirtualMenuItem item = virtualItems.get(i);
+            item.bounds.set(items.lefts[index], items.tops[index],
+                    items.lefts[index] + items.widths[index], items.tops[index] + items.heights[index]);
+            item.collapsedTranslationX = items.collapsedX[index];
+            item.collapsedTranslationY = items.collapsedY[index];
         }
-        width += SHADOW_OFFSET * 2;
-        height += SHADOW_OFFSET * 2;
-        width += buttonInterval * (getChildCount() - 1);
-        width = adjustShootLength(width);
-        setMeasuredDimension(width, height);
+        // 动画进行中重新布局时从当前进度继续，不会跳到终点
+        applyMenuFraction();
     }
 
-    private int adjustShootLength(int length) {
-        return length * 12 / 10;
+    /**
+     * 设置菜单的排列方式，例如 {@link MenuLayoutStrategy#fan(int, int)}
+     *
+     * @param strategy 为 null 时按照 {@link #setFloatingDirection(int)} 直线排列；
+     *                 其它排列方式在展开方向改变时通过 {@link MenuLayoutStrategy#withDirection(int)} 得到通知
+     */
+    public void setLayoutStrategy(MenuLayoutStrategy strategy) {
+        this.layoutStrategy = strategy;
+        requestLayout();
     }
 
-    @Override
-    protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        switch (floatingDirection) {
-            case FLOATING_DIRECTION_UP:
-                onUpDirectionLayout(l, t, r, b);
-                break;
-            case FLOATING_DIRECTION_DOWN:
-                onDownDirectionLayout(l, t, r, b);
-                break;
-            case FLOATING_DIRECTION_LEFT:
-                onLeftDirectionLayout(l, t, r, b);
-                break;
-            case FLOATING_DIRECTION_RIGHT:
-                onRightDirectionLayout(l, t, r, b);
-                break;
-        }
+    public MenuLayoutStrategy getLayoutStrategy() {
+        return layoutStrategy != null ? layoutStrategy : MenuLayoutStrategy.linear(floatingDirection);
+    }
+
+    public void setButtonInterval(float buttonInterval) {
+        this.buttonInterval = buttonInterval;
+        requestLayout();
+    }
+
+    public void addButton(FloatingActionButton button) {
+        addView(button, 0);
+        requestLayout();
+    }
+
+    public void addButtonAtLast(FloatingActionButton button) {
+        addView(button, getChildCount() - 1);
+        requestLayout();
+    }
+
+    public void removeButton(FloatingActionButton button) {
+        removeView(button);
+        requestLayout();
     }
 
     /**
-     * 摆放朝上展开方向的子控件位置
+     * 添加虚拟菜单项，排列在所有子按钮之后。虚拟菜单项没有对应的 View，由菜单自己绘制和处理点击。
+     *
+     * @param item 虚拟菜单项
      */
-    private void onUpDirectionLayout(int l, int t, int r, int b) {
-        int centerX = (r - l) / 2;
-        int offsetY = b - t - SHADOW_OFFSET;
+    public void addVirtualItem(VirtualMenuItem item) {
+        ensureVirtualItemSupport();
+        virtualItems.add(item);
+        onVirtualItemsChanged();
+    }
 
-        for (int i = getChildCount() - 1; i >= 0; i--) {
-            View child = getChildAt(i);
-            if (child.getVisibility() == GONE)
-                continue;
-            int width = child.getMeasuredWidth();
-            int height = child.getMeasuredHeight();
-            child.layout(centerX - width / 2, offsetY - height, centerX + width / 2, offsetY);
-
-            //排除根按钮，添加动画
-            if (i != getChildCount() - 1) {
-                float collapsedTranslation = b - t - SHADOW_OFFSET - offsetY;
-                float expandedTranslation = 0f;
-                child.setTranslationY(isExpanded ? expandedTranslation : collapsedTranslation);
-                child.setAlpha(isExpanded ? 1f : 0f);
-
-                MenuLayoutParams params = (MenuLayoutParams) child.getLayoutParams();
-                params.collapseDirAnim.setFloatValues(expandedTranslation, collapsedTranslation);
-                params.expandDirAnim.setFloatValues(collapsedTranslation, expandedTranslation);
-                params.collapseDirAnim.setProperty(View.TRANSLATION_Y);
-                params.expandDirAnim.setProperty(View.TRANSLATION_Y);
-                params.setAnimationsTarget(child);
-            }
-            offsetY -= height + buttonInterval;
+    public void removeVirtualItem(VirtualMenuItem item) {
+        if (virtualItems.remove(item)) {
+            onVirtualItemsChanged();
         }
     }
 
     /**
-     * 摆放朝下展开方向的子控件位置
+     * 一次性替换所有虚拟菜单项
+     *
+     * @param items 新的虚拟菜单项
      */
-    private void onDownDirectionLayout(int l, int t, int r, int b) {
-        int centerX = (r - l) / 2;
-        int offsetY = SHADOW_OFFSET;
-        View rootView = getChildAt(getChildCount() - 1);
-        rootView.layout(centerX - rootView.getMeasuredWidth() / 2, offsetY, centerX + rootView.getMeasuredWidth() / 2, offsetY + rootView.getMeasuredHeight());
-        offsetY += rootView.getMeasuredHeight() + buttonInterval;
+    public void setVirtualItems(List<VirtualMenuItem> items) {
+        ensureVirtualItemSupport();
+        virtualItems.clear();
+        virtualItems.addAll(items);
+        onVirtualItemsChanged();
+    }
 
-        for (int i = 0; i < getChildCount() - 1; i++) {
-            View child = getChildAt(i);
-            if (child.getVisibility() == GONE)
-                continue;
-            int width = child.getMeasuredWidth();
-            int height = child.getMeasuredHeight();
-            child.layout(centerX - width / 2, offsetY, centerX + width / 2, offsetY + height);
+    public List<VirtualMenuItem> getVirtualItems() {
+        return Collections.unmodifiableList(virtualItems);
+    }
 
-            float collapsedTranslation = -offsetY;
-            float expandedTranslation = 0f;
-            child.setTranslationY(isExpanded ? expandedTranslation : collapsedTranslation);
-            child.setAlpha(isExpanded ? 1f : 0f);
+    private void onVirtualItemsChanged() {
+        pressedItem = null;
+        accessibilityHelper.invalidateRoot();
+        requestLayout();
+        invalidate();
+    }
 
-            MenuLayoutParams params = (MenuLayoutParams) child.getLayoutParams();
-            params.collapseDirAnim.setFloatValues(expandedTranslation, collapsedTranslation);
-            params.expandDirAnim.setFloatValues(collapsedTranslation, expandedTranslation);
-            params.collapseDirAnim.setProperty(View.TRANSLATION_Y);
-            params.expandDirAnim.setProperty(View.TRANSLATION_Y);
-            params.setAnimationsTarget(child);
+    /**
+     * 第一次使用虚拟菜单项时才创建画笔和无障碍代理
+     */
+    private void ensureVirtualItemSupport() {
+        if (virtualItemPaint != null) return;
+        virtualItemPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        virtualItemPaint.setStyle(Paint.Style.FILL);
+        virtualShadowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        virtualShadowPaint.setColor(VIRTUAL_SHADOW_COLOR);
+        accessibilityHelper = new VirtualItemAccessibilityHelper(this);
+        ViewCompat.setAccessibilityDelegate(this, accessibilityHelper);
+    }
+
+    private int getVirtualItemSize() {
+        return virtualItems.isEmpty() ? 0 : Math.round(dp2px(VIRTUAL_ITEM_SIZE_DP));
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        // 虚拟菜单项画在子按钮下方，与子按钮在根按钮下方的层级一致
+        drawVirtualItems(canvas);
+        super.dispatchDraw(canvas);
+    }
 
-            offsetY += height + buttonInterval;
+    /**
+     * 一次遍历画出所有虚拟菜单项：共享画笔，阴影使用按尺寸缓存的位图
+     */
+    private void drawVirtualItems(Canvas canvas) {
+        if (virtualItems.isEmpty() || menuFraction <= 0f) return;
+        int alpha = Math.round(255 * Math.min(1f, menuFraction));
+        float shift = 1f - menuFraction;
+        int iconSize = Math.round(dp2px(VIRTUAL_ICON_SIZE_DP));
+        float shadowRadius = dp2px(VIRTUAL_SHADOW_RADIUS_DP);
+        virtualShadowPaint.setAlpha(Color.alpha(VIRTUAL_SHADOW_COLOR) * alpha / 255);
+        for (VirtualMenuItem item : virtualItems) {
+            Rect bounds = item.bounds;
+            if (bounds.isEmpty()) continue;
+            int save = canvas.save();
+            canvas.translate(item.collapsedTranslationX * shift, item.collapsedTranslationY * shift);
+
+            Bitmap shadow = getShadowBitmap(bounds.width(), shadowRadius);
+            canvas.drawBitmap(shadow, bounds.left - shadowRadius, bounds.top - shadowRadius + shadowRadius / 2, virtualShadowPaint);
+
+            int tint = item == pressedItem ? blendPressed(item.getTint()) : item.getTint();
+            virtualItemPaint.setColor(tint);
+            virtualItemPaint.setAlpha(Color.alpha(tint) * alpha / 255);
+            canvas.drawCircle(bounds.exactCenterX(), bounds.exactCenterY(), bounds.width() / 2f, virtualItemPaint);
+
+            Drawable icon = item.getIcon();
+            if (icon != null) {
+                int left = bounds.centerX() - iconSize / 2;
+                int top = bounds.centerY() - iconSize / 2;
+                icon.setBounds(left, top, left + iconSize, top + iconSize);
+                icon.setAlpha(alpha);
+                icon.draw(canvas);
+            }
+            canvas.restoreToCount(save);
         }
     }
 
     /**
-     * 摆放朝左展开方向的子控件位置
+     * 同一尺寸的阴影只生成一次，直到菜单离开窗口
      */
-    private void onLeftDirectionLayout(int l, int t, int r, int b) {
-        int centerY = (b - t) / 2;
-        int offsetX = r - l - SHADOW_OFFSET;
+    private Bitmap getShadowBitmap(int diameter, float shadowRadius) {
+        Bitmap shadow = shadowBitmaps.get(diameter);
+        if (shadow == null) {
+            int padding = (int) Math.ceil(shadowRadius);
+            int size = diameter + padding * 2;
+            shadow = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setMaskFilter(new BlurMaskFilter(shadowRadius, BlurMaskFilter.Blur.NORMAL));
+            new Canvas(shadow).drawCircle(size / 2f, size / 2f, diameter / 2f, paint);
+            shadowBitmaps.put(diameter, shadow);
+        }
+        return shadow;
+    }
 
-        for (int i = getChildCount() - 1; i >= 0; i--) {
-            View child = getChildAt(i);
-            if (child.getVisibility() == GONE)
-                continue;
-            int width = child.getMeasuredWidth();
-            int height = child.getMeasuredHeight();
-            child.layout(offsetX - width, centerY - height / 2, offsetX, centerY + height / 2);
-
-            //排除根按钮，添加动画
-            if (i != getChildCount() - 1) {
-                float collapsedTranslation = r - l - SHADOW_OFFSET - offsetX;
-                float expandedTranslation = 0f;
-                child.setTranslationX(isExpanded ? expandedTranslation : collapsedTranslation);
-                child.setAlpha(isExpanded ? 1f : 0f);
-
-                MenuLayoutParams params = (MenuLayoutParams) child.getLayoutParams();
-                params.collapseDirAnim.setFloatValues(expandedTranslation, collapsedTranslation);
-                params.expandDirAnim.setFloatValues(collapsedTranslation, expandedTranslation);
-                params.collapseDirAnim.setProperty(View.TRANSLATION_X);
-                params.expandDirAnim.setProperty(View.TRANSLATION_X);
-                params.setAnimationsTarget(child);
+    private static int blendPressed(int color) {
+        float[] hsv = new float[3];
+        Color.colorToHSV(color, hsv);
+        hsv[2] *= 0.85f;
+        return Color.HSVToColor(Color.alpha(color), hsv);
+    }
+
+    private VirtualMenuItem findVirtualItem(float x, float y) {
+        if (!isExpanded) return null;
+        for (VirtualMenuItem item : virtualItems) {
+            if (item.bounds.contains((int) x, (int) y)) {
+                return item;
             }
-            offsetX -= width + buttonInterval;
+        }
+        return null;
+    }
+
+    private void performVirtualItemClick(VirtualMenuItem item) {
+        playSoundEffect(SoundEffectConstants.CLICK);
+        if (item.getOnItemClickListener() != null) {
+            item.getOnItemClickListener().onItemClick(this, item);
+        }
+        accessibilityHelper.sendEventForVirtualView(virtualItems.indexOf(item), AccessibilityEvent.TYPE_VIEW_CLICKED);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (!draggable) {
+            return super.onInterceptTouchEvent(ev);
+        }
+        switch (ev.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                View root = getChildAt(getChildCount() - 1);
+                dragTracking = ev.getX() >= root.getLeft() && ev.getX() < root.getRight()
+                        && ev.getY() >= root.getTop() && ev.getY() < root.getBottom();
+                // 使用屏幕坐标，菜单跟随手指移动时不会影响移动距离的计算
+                dragDownX = ev.getRawX();
+                dragDownY = ev.getRawY();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (dragTracking && !dragging
+                        && Math.hypot(ev.getRawX() - dragDownX, ev.getRawY() - dragDownY) > touchSlop) {
+                    startDrag(ev);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                dragTracking = false;
+                break;
+        }
+        // 开始拖动后拦截事件，根按钮收到 CANCEL，不会触发点击
+        return dragging;
+    }
+
+    private void startDrag(MotionEvent ev) {
+        dragging = true;
+        animate().cancel();
+        collapseImmediately();
+        // 从越过阈值的位置开始跟随，避免菜单突然跳动
+        dragDownX = ev.getRawX();
+        dragDownY = ev.getRawY();
+        dragStartTranslationX = getTranslationX();
+        dragStartTranslationY = getTranslationY();
+        if (getParent() != null) {
+            getParent().requestDisallowInterceptTouchEvent(true);
         }
     }
 
     /**
-     * 摆放朝右展开方向的子控件位置
+     * 拖动时只修改平移，根按钮限制在父布局之内
      */
-    private void onRightDirectionLayout(int l, int t, int r, int b) {
-        int centerY = (b - t) / 2;
-        int offsetX = SHADOW_OFFSET;
-        View rootView = getChildAt(getChildCount() - 1);
-        rootView.layout(offsetX, centerY - rootView.getMeasuredHeight() / 2, offsetX + rootView.getMeasuredWidth(), centerY + rootView.getMeasuredHeight() / 2);
-        offsetX += rootView.getMeasuredWidth() + buttonInterval;
+    private void dragTo(float translationX, float translationY) {
+        if (getParent() instanceof View) {
+            View parent = (View) getParent();
+            View root = getChildAt(getChildCount() - 1);
+            translationX = clamp(translationX, -getLeft() - root.getLeft(),
+                    parent.getWidth() - getLeft() - root.getRight());
+            translationY = clamp(translationY, -getTop() - root.getTop(),
+                    parent.getHeight() - getTop() - root.getBottom());
+        }
+        setTranslationX(translationX);
+        setTranslationY(translationY);
+    }
 
-        for (int i = 0; i < getChildCount() - 1; i++) {
-            View child = getChildAt(i);
-            if (child.getVisibility() == GONE)
-                continue;
-            int width = child.getMeasuredWidth();
-            int height = child.getMeasuredHeight();
-            child.layout(offsetX, centerY - height / 2, offsetX + width, centerY + height / 2);
+    /**
+     * 贴靠到根按钮最近的父布局边缘，展开方向改为朝向父布局内部
+     */
+    private void snapToEdge() {
+        if (!(getParent() instanceof View)) return;
+        View parent = (View) getParent();
+        View root = getChildAt(getChildCount() - 1);
+        float centerX = getLeft() + getTranslationX() + (root.getLeft() + root.getRight()) / 2f;
+        float centerY = getTop() + getTranslationY() + (root.getTop() + root.getBottom()) / 2f;
+        float toLeft = centerX;
+        float toRight = parent.getWidth() - centerX;
+        float toTop = centerY;
+        float toBottom = parent.getHeight() - centerY;
+        int direction;
+        if (toLeft <= toRight && toLeft <= toTop && toLeft <= toBottom) {
+            direction = FLOATING_DIRECTION_RIGHT;
+        } else if (toRight <= toTop && toRight <= toBottom) {
+            direction = FLOATING_DIRECTION_LEFT;
+        } else if (toTop <= toBottom) {
+            direction = FLOATING_DIRECTION_DOWN;
+        } else {
+            direction = FLOATING_DIRECTION_UP;
+        }
+        if (isDirectionLayoutPrecomputed() && direction != floatingDirection) {
+            // 根按钮在各个方向的布局中位置不同，用平移抵消，切换前后根按钮在屏幕上保持不动
+            int rootLeft = root.getLeft();
+            int rootTop = root.getTop();
+            setFloatingDirection(direction);
+            setTranslationX(getTranslationX() + rootLeft - root.getLeft());
+            setTranslationY(getTranslationY() + rootTop - root.getTop());
+        }
 
-            float collapsedTranslation = -offsetX;
-            float expandedTranslation = 0f;
-            child.setTranslationX(isExpanded ? expandedTranslation : collapsedTranslation);
-            child.setAlpha(isExpanded ? 1f : 0f);
+        float margin = dp2px(SNAP_MARGIN_DP);
+        float minX = margin - getLeft() - root.getLeft();
+        float maxX = parent.getWidth() - margin - getLeft() - root.getRight();
+        float minY = margin - getTop() - root.getTop();
+        float maxY = parent.getHeight() - margin - getTop() - root.getBottom();
+        float targetX = clamp(getTranslationX(), minX, maxX);
+        float targetY = clamp(getTranslationY(), minY, maxY);
+        switch (direction) {
+            case FLOATING_DIRECTION_RIGHT:
+                targetX = minX;
+                break;
+            case FLOATING_DIRECTION_LEFT:
+                targetX = maxX;
+                break;
+            case FLOATING_DIRECTION_DOWN:
+                targetY = minY;
+                break;
+            default:
+                targetY = maxY;
+                break;
+        }
+        animate().translationX(targetX).translationY(targetY)
+                .setDuration(SNAP_DURATION)
+                .setInterpolator(collapseInterpolator)
+                .start();
+    }
 
-            MenuLayoutParams params = (MenuLayoutParams) child.getLayoutParams();
-            params.collapseDirAnim.setFloatValues(expandedTranslation, collapsedTranslation);
-            params.expandDirAnim.setFloatValues(collapsedTranslation, expandedTranslation);
-            params.collapseDirAnim.setProperty(View.TRANSLATION_X);
-            params.expandDirAnim.setProperty(View.TRANSLATION_X);
-            params.setAnimationsTarget(child);
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
 
-            offsetX += width + buttonInterval;
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (dragging) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_MOVE:
+                    dragTo(dragStartTranslationX + event.getRawX() - dragDownX,
+                            dragStartTranslationY + event.getRawY() - dragDownY);
+                    break;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    dragging = false;
+                    dragTracking = false;
+                    snapToEdge();
+                    break;
+            }
+            return true;
         }
+        if (virtualItems.isEmpty()) {
+            return super.onTouchEvent(event);
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                pressedItem = findVirtualItem(event.getX(), event.getY());
+                if (pressedItem != null) {
+                    invalidate();
+                    return true;
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (pressedItem != null) {
+                    if (!pressedItem.bounds.contains((int) event.getX(), (int) event.getY())) {
+                        pressedItem = null;
+                        invalidate();
+                    }
+                    return true;
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (pressedItem != null) {
+                    VirtualMenuItem item = pressedItem;
+                    pressedItem = null;
+                    invalidate();
+                    performVirtualItemClick(item);
+                    return true;
+                }
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                if (pressedItem != null) {
+                    pressedItem = null;
+                    invalidate();
+                    return true;
+                }
+                break;
+        }
+        return super.onTouchEvent(event);
     }
 
-    public void setButtonInterval(float buttonInterval) {
-        this.buttonInterval = buttonInterval;
-        requestLayout();
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        if (accessibilityHelper != null && accessibilityHelper.dispatchHoverEvent(event)) {
+            return true;
+        }
+        return super.dispatchHoverEvent(event);
     }
 
-    public void addButton(FloatingActionButton button) {
-        addView(button, 0);
-        requestLayout();
+    /**
+     * 一次性设置所有子按钮（不包含根按钮），列表顺序即子控件的顺序，根按钮始终在最后。
+     * 只应用差异：已经在菜单中的按钮直接复用并调整顺序，不会重新 attach；
+     * 整个变更只触发一次测量布局，展开/收缩动画在下一次切换时统一重建。
+     *
+     * @param buttons 新的按钮列表
+     */
+    public void setButtons(List<? extends View> buttons) {
+        if (getChildCount() == 0) {
+            // 根按钮还未加入，此时不需要考虑排列
+            for (int i = 0; i < buttons.size(); i++) {
+                View button = buttons.get(i);
+                addViewInLayout(button, i, menuLayoutParams(button), true);
+            }
+            requestLayout();
+            return;
+        }
+        View rootView = getChildAt(getChildCount() - 1);
+        boolean changed = false;
+        for (int i = getChildCount() - 2; i >= 0; i--) {
+            View child = getChildAt(i);
+            if (!buttons.contains(child)) {
+                removeViewInLayout(child);
+                changed = true;
+            }
+        }
+        for (int i = 0; i < buttons.size(); i++) {
+            View button = buttons.get(i);
+            if (button == rootView || getChildAt(i) == button) continue;
+            if (button.getParent() == this) {
+                // 复用已有的按钮，只调整顺序
+                detachViewFromParent(button);
+                attachViewToParent(button, i, button.getLayoutParams());
+            } else {
+                addViewInLayout(button, i, menuLayoutParams(button), true);
+            }
+            changed = true;
+        }
+        if (changed) {
+            requestLayout();
+            invalidate();
+        }
     }
 
-    public void addButtonAtLast(FloatingActionButton button) {
-        addView(button, getChildCount() - 1);
-        requestLayout();
+    /**
+     * 开始一次按钮变更事务，在 {@link ButtonTransaction#commit()} 时通过 {@link #setButtons(List)} 一次性应用
+     */
+    public ButtonTransaction beginButtonTransaction() {
+        List<View> buttons = new ArrayList<>();
+        for (int i = 0; i < getChildCount() - 1; i++) {
+            buttons.add(getChildAt(i));
+        }
+        return new ButtonTransaction(buttons);
     }
 
-    public void removeButton(FloatingActionButton button) {
-        removeView(button);
-        requestLayout();
+    private LayoutParams menuLayoutParams(View button) {
+        LayoutParams params = button.getLayoutParams();
+        if (params == null) {
+            return generateDefaultLayoutParams();
+        }
+        return checkLayoutParams(params) ? params : generateLayoutParams(params);
     }
 
     public void setMusicCover(Drawable drawable) {
+        cover = null;
         floatingMusicButton.setCoverDrawable(drawable);
     }
 
     public void setMusicCover(Bitmap bitmap) {
+        cover = null;
         floatingMusicButton.setCover(bitmap);
     }
 
+    /**
+     * 设置封面
+     *
+     * @param drawable 封面
+     * @param coverKey 封面的唯一标识（例如专辑 id），用于缓存自动提取的颜色
+     */
+    public void setMusicCover(Drawable drawable, String coverKey) {
+        cover = null;
+        floatingMusicButton.setCoverDrawable(drawable, coverKey);
+    }
+
+    /**
+     * 设置封面
+     *
+     * @param bitmap   封面
+     * @param coverKey 封面的唯一标识（例如专辑 id），用于缓存自动提取的颜色
+     */
+    public void setMusicCover(Bitmap bitmap, String coverKey) {
+        cover = null;
+        floatingMusicButton.setCover(bitmap, coverKey);
+    }
+
+    /**
+     * 设置动态封面，例如 {@link MovieCover#decode(java.io.InputStream)} 解码的 GIF，
+     * 或者 API 28 及以上 {@link AnimatedImageCover#decode} 解码的 GIF 和动态 WebP
+     *
+     * @param animatedCover 帧来源，更换封面时自动释放
+     */
+    public void setMusicCover(AnimatedCover animatedCover) {
+        cover = null;
+        floatingMusicButton.setAnimatedCover(animatedCover);
+    }
+
+    /**
+     * 切歌时淡入新封面，旋转不会中断
+     *
+     * @param bitmap         封面
+     * @param coverKey       封面的唯一标识（例如专辑 id），用于缓存自动提取的颜色
+     * @param durationMillis 淡入时长
+     * @param listener       旧封面位图不再使用时回调，可用于解码下一张封面，可以为 null
+     */
+    public void crossfadeMusicCover(Bitmap bitmap, String coverKey, long durationMillis,
+                                    RotatingProgressDrawable.OnCoverReleasedListener listener) {
+        cover = null;
+        floatingMusicButton.crossfadeCover(bitmap, coverKey, durationMillis, listener);
+    }
+
+    /**
+     * 设置封面的磁盘缓存，之后通过带 key 的 {@link #setMusicCover(Drawable, String)} 设置的封面
+     * 会缩小到按钮尺寸后缓存
+     *
+     * @param diskCache 为 null 时不使用磁盘缓存
+     */
+    public void setCoverDiskCache(CoverDiskCache diskCache) {
+        floatingMusicButton.setCoverDiskCache(diskCache);
+    }
+
+    /**
+     * 设置多尺寸封面缓存，多个菜单或按钮共用同一个 {@link CoverStore} 时，
+     * 同一张封面（相同的 key）只会光栅化一次
+     *
+     * @param coverStore 为 null 时不使用
+     */
+    public void setCoverStore(CoverStore coverStore) {
+        floatingMusicButton.setCoverStore(coverStore);
+    }
+
+    /**
+     * 设置封面图集，同一个列表中的多个菜单共用一个 {@link CoverAtlas} 时，封面会打包进共享的大位图中
+     *
+     * @param coverAtlas 为 null 时不使用
+     */
+    public void setCoverAtlas(CoverAtlas coverAtlas) {
+        floatingMusicButton.setCoverAtlas(coverAtlas);
+    }
+
+    /**
+     * 在后台线程从磁盘缓存中恢复封面，例如冷启动时恢复"正在播放"的状态
+     *
+     * @param coverKey 封面的唯一标识
+     * @param callback 在主线程回调，未命中时为 null，此时需要调用 {@link #setMusicCover(Drawable, String)}；可以为 null
+     */
+    public void setMusicCoverFromCache(String coverKey, final CoverDiskCache.Callback callback) {
+        floatingMusicButton.setCoverFromCache(coverKey, new CoverDiskCache.Callback() {
+            @Override
+            public void onCoverLoaded(Bitmap bitmap) {
+                if (bitmap != null) {
+                    cover = null;
+                }
+                if (callback != null) {
+                    callback.onCoverLoaded(bitmap);
+                }
+            }
+        });
+    }
+
+    /**
+     * 是否根据封面自动设置进度条颜色和背景色，颜色在后台线程提取
+     *
+     * @param autoColor
+     */
+    public void setAutoColor(boolean autoColor) {
+        floatingMusicButton.setAutoColor(autoColor);
+    }
+
+    /**
+     * 封面不透明时由封面绘制进度条底色，按钮背景不再绘制，减少过度绘制
+     *
+     * @param optimized
+     */
+    public void setOverdrawOptimized(boolean optimized) {
+        floatingMusicButton.setOverdrawOptimized(optimized);
+    }
+
+    /**
+     * 设置封面的绘制方式
+     *
+     * @param renderMode {@link RotatingProgressDrawable#RENDER_MODE_SHADER} 或 {@link RotatingProgressDrawable#RENDER_MODE_BAKED}
+     * @see FloatingMusicButton#setCoverRenderMode(int)
+     */
+    public void setCoverRenderMode(int renderMode) {
+        floatingMusicButton.setCoverRenderMode(renderMode);
+    }
+
+    /**
+     * @see FloatingMusicButton#setSnapshotInterval(long)
+     */
+    public void setSnapshotInterval(long intervalMillis) {
+        floatingMusicButton.setSnapshotInterval(intervalMillis);
+    }
+
+    /**
+     * 把根按钮的当前画面导出到 target，画面没有变化或者导出过于频繁时返回 false
+     *
+     * @see FloatingMusicButton#exportSnapshot(Bitmap)
+     */
+    public boolean exportSnapshot(Bitmap target) {
+        return floatingMusicButton.exportSnapshot(target);
+    }
+
+    /**
+     * 设置进度，可以在播放器回调等任意线程直接调用，不需要 post 到主线程
+     *
+     * @param progress 0-100
+     */
     public void setProgress(float progress) {
         if (floatingMusicButton != null) {
             floatingMusicButton.setProgress(progress);
         }
     }
 
+    /**
+     * 设置拖动预览时的 seek 回调
+     *
+     * @param listener 为 null 时只预览不回调
+     */
+    public void setOnSeekListener(OnSeekListener listener) {
+        this.seekListener = listener;
+    }
+
+    /**
+     * 拖动过程中两次 {@link OnSeekListener#onSeek(float)} 之间的最小间隔
+     *
+     * @param seekInterval 毫秒，默认为 {@link #DEFAULT_SEEK_INTERVAL}；小于等于 0 时拖动过程中不 seek，只在松手时提交
+     */
+    public void setSeekInterval(long seekInterval) {
+        this.seekInterval = seekInterval;
+    }
+
+    /**
+     * 开始拖动预览，例如在 SeekBar 的 onStartTrackingTouch 中调用。
+     * 预览期间进度条跟随 {@link #scrubTo(float)}，{@link #setProgress(float)} 等播放器的进度只记录不显示，
+     * 直到 {@link #endScrub()}。需要在主线程调用
+     */
+    public void beginScrub() {
+        if (scrubbing) return;
+        scrubbing = true;
+        lastSeekProgress = Float.NaN;
+        seeked = false;
+    }
+
+    /**
+     * 更新预览位置，进度条在下一帧显示；seek 按照 {@link #setSeekInterval(long)} 限流，
+     * 间隔内的多次拖动只回调最后一个位置
+     *
+     * @param progress 0-100
+     */
+    public void scrubTo(float progress) {
+        beginScrub();
+        scrubProgress = Math.max(0f, Math.min(100f, progress));
+        floatingMusicButton.setScrubProgress(scrubProgress);
+        if (seekListener == null || seekInterval <= 0 || seekPending) return;
+        long wait = lastSeekTime + seekInterval - SystemClock.uptimeMillis();
+        if (!seeked || wait <= 0) {
+            dispatchSeek();
+        } else {
+            seekPending = true;
+            postDelayed(seekRunnable, wait);
+        }
+    }
+
+    /**
+     * 结束拖动预览，位置与最后一次 seek 不同时先回调 {@link OnSeekListener#onSeek(float)}，
+     * 再回调 {@link OnSeekListener#onSeekCommitted(float)}；之后进度条重新跟随播放器的进度
+     */
+    public void endScrub() {
+        if (!scrubbing) return;
+        scrubbing = false;
+        if (seekPending) {
+            seekPending = false;
+            removeCallbacks(seekRunnable);
+        }
+        floatingMusicButton.endScrub(scrubProgress);
+        if (seekListener != null) {
+            dispatchSeek();
+            seekListener.onSeekCommitted(scrubProgress);
+        }
+    }
+
+    public boolean isScrubbing() {
+        return scrubbing;
+    }
+
+    /**
+     * 同一个位置不会重复 seek
+     */
+    private void dispatchSeek() {
+        if (seekListener == null || scrubProgress == lastSeekProgress) return;
+        lastSeekProgress = scrubProgress;
+        lastSeekTime = SystemClock.uptimeMillis();
+        seeked = true;
+        seekListener.onSeek(scrubProgress);
+    }
+
+    /**
+     * 设置封面旋转的帧率策略
+     *
+     * @param policy 帧率策略
+     * @see FrameRatePolicy
+     */
+    public void setFrameRatePolicy(FrameRatePolicy policy) {
+        floatingMusicButton.setFrameRatePolicy(policy);
+    }
+
+    public FrameRatePolicy getFrameRatePolicy() {
+        return floatingMusicButton.getFrameRatePolicy();
+    }
+
+    /**
+     * 设置缓冲进度，用于流媒体显示已缓冲的位置
+     *
+     * @param bufferedProgress 0-100
+     */
+    public void setBufferedProgress(float bufferedProgress) {
+        floatingMusicButton.setBufferedProgress(bufferedProgress);
+    }
+
+    /**
+     * 设置已播放部分的渐变色，传入 null 时使用纯色
+     *
+     * @param colors 渐变色
+     */
+    public void setProgressGradient(int[] colors) {
+        floatingMusicButton.setProgressGradient(colors);
+    }
+
+    /**
+     * 整体提交"正在播放"的状态，可以在任意线程调用。
+     * 同一帧内的多次提交只保留最后一次，在下一帧与上一次应用的状态比较后只应用变化的部分，
+     * 代替分别调用 {@link #setMusicCover}、{@link #setProgress}、{@link #start}、{@link #stop} 等方法
+     *
+     * @param state 新的状态
+     */
+    public void setNowPlayingState(NowPlayingState state) {
+        if (state == null) return;
+        if (pendingState.getAndSet(state) == null) {
+            postOnAnimation(applyStateRunnable);
+        }
+    }
+
+    /**
+     * 最近一次提交的状态，还没有提交过时返回 null
+     */
+    public NowPlayingState getNowPlayingState() {
+        NowPlayingState pending = pendingState.get();
+        return pending != null ? pending : appliedState;
+    }
+
+    private void applyPendingState() {
+        NowPlayingState next = pendingState.getAndSet(null);
+        if (next == null || next == appliedState) return;
+        if (next.hasCover()) {
+            cover = null;
+        }
+        floatingMusicButton.applyState(appliedState, next);
+        appliedState = next;
+    }
+
+    /**
+     * 开始旋转，可以在任意线程调用
+     */
     public void start() {
         floatingMusicButton.rotate(true);
     }
 
+    /**
+     * 停止旋转，可以在任意线程调用
+     */
     public void stop() {
         floatingMusicButton.rotate(false);
     }
 
+    /**
+     * 配置变更后封面是否已经从保留的状态中恢复，为 false 时（例如进程被回收）需要重新设置封面
+     */
+    public boolean isCoverRestored() {
+        return floatingMusicButton.isCoverRestored();
+    }
+
     public void setFloatingDirection(int floatingDirection) {
+        boolean precomputed = isDirectionLayoutPrecomputed() && ViewCompat.isLaidOut(this) && !isLayoutRequested();
         this.floatingDirection = floatingDirection;
-        postInvalidate();
+        if (layoutStrategy == null || MenuLayoutStrategy.isLinear(layoutStrategy)) {
+            // 直线排列跟随展开方向
+            layoutStrategy = null;
+        } else {
+            // 保留 setLayoutStrategy 设置的排列方式，上一次的布局结果不再有效
+            layoutStrategy = layoutStrategy.withDirection(floatingDirection);
+            layoutItems.invalidateCache();
+        }
+        if (precomputed && floatingDirection >= 0 && floatingDirection < directionItems.length) {
+            // 四个方向的布局已经算好且菜单大小不变，直接重新摆放子控件，applyLayout 会按照当前进度应用位移
+            applyLayout(MenuLayoutStrategy.linear(floatingDirection), directionItems[floatingDirection]);
+            // 没有经过 onLayout，虚拟菜单项的位置变化需要自己通知无障碍服务
+            if (accessibilityHelper != null) {
+                accessibilityHelper.invalidateRoot();
+            }
+        } else {
+            requestLayout();
+        }
+    }
+
+    public int getFloatingDirection() {
+        return floatingDirection;
+    }
+
+    /**
+     * 设置是否可以拖动整个菜单：按住根按钮移动超过系统的滑动阈值后开始拖动，松手后贴靠到最近的父布局边缘，
+     * 展开方向改为朝向父布局内部。拖动和贴靠只修改菜单的平移，不会重新测量布局。
+     * <p>
+     * 使用直线排列时，可拖动的菜单按照四个方向中最大的尺寸测量，切换方向只重新摆放子控件；
+     * 使用 {@link #setLayoutStrategy(MenuLayoutStrategy)} 设置的排列方式在贴靠后保持不变。
+     * </p>
+     */
+    public void setDraggable(boolean draggable) {
+        if (this.draggable == draggable) return;
+        this.draggable = draggable;
+        dragTracking = false;
+        dragging = false;
+        requestLayout();
+    }
+
+    public boolean isDraggable() {
+        return draggable;
+    }
+
+    /**
+     * 根按钮没有 id，不会参与视图树的状态保存，由菜单代为保存
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        Bundle bundle = new Bundle();
+        bundle.putParcelable(STATE_SUPER, super.onSaveInstanceState());
+        Bundle buttonState = new Bundle();
+        floatingMusicButton.saveCoverState(buttonState);
+        bundle.putBundle(STATE_BUTTON, buttonState);
+        return bundle;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof Bundle)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        Bundle bundle = (Bundle) state;
+        super.onRestoreInstanceState(bundle.getParcelable(STATE_SUPER));
+        Bundle buttonState = bundle.getBundle(STATE_BUTTON);
+        if (buttonState != null) {
+            floatingMusicButton.restoreCoverState(buttonState);
+            if (floatingMusicButton.isCoverRestored()) {
+                cover = null;
+            }
+        }
+    }
+
+    @Override
+    protected boolean checkLayoutParams(LayoutParams p) {
+        return p instanceof MenuLayoutParams;
     }
 
     @Override
@@ -445,68 +1260,137 @@ public class FloatingMusicMenu extends ViewGroup {
     private static final float COLLAPSED_PLUS_ROTATION = 0f;
     private static final float EXPANDED_PLUS_ROTATION = 90f + 45f;
 
-    private AnimatorSet mExpandAnimation = new AnimatorSet().setDuration(ANIMATION_DURATION);
-    private AnimatorSet mCollapseAnimation = new AnimatorSet().setDuration(ANIMATION_DURATION);
+    // 子按钮的层在最后一次动画结束后保留的时长，连续切换时不会反复重建
+    static final long LAYER_IDLE_TIMEOUT = 3000;
 
     private static Interpolator expandInterpolator = new OvershootInterpolator();
     private static Interpolator collapseInterpolator = new DecelerateInterpolator(3f);
     private static Interpolator alphaExpandInterpolator = new DecelerateInterpolator();
 
-    private class MenuLayoutParams extends LayoutParams {
-
-        private ObjectAnimator expandDirAnim = new ObjectAnimator();
-        private ObjectAnimator expandAlphaAnim = new ObjectAnimator();
-        private ObjectAnimator collapseDirAnim = new ObjectAnimator();
-        private ObjectAnimator collapseAlphaAnim = new ObjectAnimator();
-
-        private boolean animationsSetToPlay;
+    // 展开进度，0 为收缩，1 为展开，展开时的回弹会略大于 1
+    private float menuFraction;
+    private ValueAnimator menuAnimator;
+    private boolean layersEnabled;
+    private final Runnable releaseLayersRunnable = new Runnable() {
+        @Override
+        public void run() {
+            setChildLayersEnabled(false);
+        }
+    };
 
-        public MenuLayoutParams(LayoutParams source) {
-            super(source);
+    /**
+     * 展开/收缩共用一个动画，只驱动展开进度。每次切换都从当前进度出发，
+     * 时长按照剩余距离缩短，快速连续切换时不会跳回端点重新播放
+     */
+    private void ensureMenuAnimator() {
+        if (menuAnimator != null) return;
+        menuAnimator = new ValueAnimator();
+        menuAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                menuFraction = (Float) animation.getAnimatedValue();
+                applyMenuFraction();
+            }
+        });
+        menuAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationStart(Animator animation) {
+                removeCallbacks(releaseLayersRunnable);
+                setChildLayersEnabled(true);
+            }
 
-            expandDirAnim.setInterpolator(expandInterpolator);
-            expandAlphaAnim.setInterpolator(alphaExpandInterpolator);
-            collapseDirAnim.setInterpolator(collapseInterpolator);
-            collapseAlphaAnim.setInterpolator(collapseInterpolator);
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                // 反向切换时先 cancel 再 start，这里的延迟释放会在 start 时被移除
+                removeCallbacks(releaseLayersRunnable);
+                postDelayed(releaseLayersRunnable, LAYER_IDLE_TIMEOUT);
+            }
+        });
+    }
 
-            collapseAlphaAnim.setProperty(View.ALPHA);
-            collapseAlphaAnim.setFloatValues(1f, 0f);
+    private void animateMenuFraction(float target, boolean immediately) {
+        ensureMenuAnimator();
+        menuAnimator.cancel();
+        float distance = Math.min(1f, Math.abs(target - menuFraction));
+        if (immediately || distance == 0f) {
+            menuFraction = target;
+            applyMenuFraction();
+            return;
+        }
+        menuAnimator.setFloatValues(menuFraction, target);
+        menuAnimator.setInterpolator(target > menuFraction ? expandInterpolator : collapseInterpolator);
+        menuAnimator.setDuration(Math.round(ANIMATION_DURATION * distance));
+        menuAnimator.start();
+    }
 
-            expandAlphaAnim.setProperty(View.ALPHA);
-            expandAlphaAnim.setFloatValues(0f, 1f);
+    /**
+     * 按照展开进度设置子按钮的位移和透明度，虚拟菜单项在绘制时读取同一个进度
+     */
+    private void applyMenuFraction() {
+        float shift = 1f - menuFraction;
+        float alpha = alphaExpandInterpolator.getInterpolation(Math.max(0f, Math.min(1f, menuFraction)));
+        for (int i = 0; i < getChildCount() - 1; i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() == GONE) continue;
+            MenuLayoutParams params = (MenuLayoutParams) child.getLayoutParams();
+            child.setTranslationX(params.collapsedX * shift);
+            child.setTranslationY(params.collapsedY * shift);
+            child.setAlpha(alpha);
         }
+        if (!virtualItems.isEmpty()) {
+            invalidate();
+        }
+    }
 
-        public void setAnimationsTarget(View view) {
-            collapseAlphaAnim.setTarget(view);
-            collapseDirAnim.setTarget(view);
-            expandDirAnim.setTarget(view);
-            expandAlphaAnim.setTarget(view);
+    /**
+     * 子按钮的硬件层在动画开始时创建，空闲 {@link #LAYER_IDLE_TIMEOUT} 后才释放
+     */
+    private void setChildLayersEnabled(boolean enabled) {
+        if (enabled && !isHardwareAccelerated()) return;
+        layersEnabled = enabled;
+        for (int i = 0; i < getChildCount() - 1; i++) {
+            View child = getChildAt(i);
+            MenuLayoutParams params = (MenuLayoutParams) child.getLayoutParams();
+            if (params.layerEnabled == enabled) continue;
+            params.layerEnabled = enabled;
+            child.setLayerType(enabled ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE, null);
+        }
+    }
 
-            // Now that the animations have targets, set them to be played
-            if (!animationsSetToPlay) {
-                addLayerTypeListener(expandDirAnim, view);
-                addLayerTypeListener(collapseDirAnim, view);
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+        // 移除的按钮恢复原来的层类型
+        LayoutParams params = child.getLayoutParams();
+        if (params instanceof MenuLayoutParams && ((MenuLayoutParams) params).layerEnabled) {
+            ((MenuLayoutParams) params).layerEnabled = false;
+            child.setLayerType(LAYER_TYPE_NONE, null);
+        }
+    }
 
-                mCollapseAnimation.play(collapseAlphaAnim);
-                mCollapseAnimation.play(collapseDirAnim);
-                mExpandAnimation.play(expandAlphaAnim);
-                mExpandAnimation.play(expandDirAnim);
-                animationsSetToPlay = true;
-            }
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (seekPending) {
+            seekPending = false;
+            removeCallbacks(seekRunnable);
         }
+        removeCallbacks(releaseLayersRunnable);
+        if (layersEnabled) {
+            setChildLayersEnabled(false);
+        }
+        shadowBitmaps.clear();
+    }
 
-        private void addLayerTypeListener(Animator animator, final View view) {
-            animator.addListener(new AnimatorListenerAdapter() {
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    view.setLayerType(LAYER_TYPE_NONE, null);
-                }
+    private static class MenuLayoutParams extends LayoutParams {
 
-                @Override
-                public void onAnimationStart(Animator animation) {
-                    view.setLayerType(LAYER_TYPE_HARDWARE, null);
-                }
-            });
+        // 收缩时相对展开位置的位移
+        private float collapsedX;
+        private float collapsedY;
+        private boolean layerEnabled;
+
+        public MenuLayoutParams(LayoutParams source) {
+            super(source);
         }
     }
 
@@ -521,9 +1405,7 @@ public class FloatingMusicMenu extends ViewGroup {
     private void collapse(boolean immediately) {
         if (isExpanded) {
             isExpanded = false;
-            mCollapseAnimation.setDuration(immediately ? 0 : ANIMATION_DURATION);
-            mCollapseAnimation.start();
-            mExpandAnimation.cancel();
+            animateMenuFraction(0f, immediately);
         }
     }
 
@@ -538,8 +1420,7 @@ public class FloatingMusicMenu extends ViewGroup {
     public void expand() {
         if (!isExpanded) {
             isExpanded = true;
-            mCollapseAnimation.cancel();
-            mExpandAnimation.start();
+            animateMenuFraction(1f, false);
         }
     }
 
@@ -550,16 +1431,22 @@ public class FloatingMusicMenu extends ViewGroup {
     public void hide() {
         if (!isHided) {
             isHided = true;
-            hideAnimation.start();
+            ensureScrollAnimation();
             showAnimation.cancel();
+            hideAnimation.start();
         }
     }
 
+    public boolean isHided() {
+        return isHided;
+    }
+
     public void show() {
         if (isHided) {
             isHided = false;
-            showAnimation.start();
+            ensureScrollAnimation();
             hideAnimation.cancel();
+            showAnimation.start();
         }
     }
 
@@ -568,13 +1455,134 @@ public class FloatingMusicMenu extends ViewGroup {
                 getResources().getDisplayMetrics());
     }
 
+    /**
+     * 把虚拟菜单项暴露给无障碍服务，虚拟 id 即菜单项的下标
+     */
+    private class VirtualItemAccessibilityHelper extends ExploreByTouchHelper {
+
+        VirtualItemAccessibilityHelper(View host) {
+            super(host);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            VirtualMenuItem item = findVirtualItem(x, y);
+            return item == null ? INVALID_ID : virtualItems.indexOf(item);
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            if (!isExpanded) return;
+            for (int i = 0; i < virtualItems.size(); i++) {
+                virtualViewIds.add(i);
+            }
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, AccessibilityNodeInfoCompat node) {
+            if (virtualViewId < 0 || virtualViewId >= virtualItems.size()) {
+                // 菜单项已经被移除，仍需提供非空的边界
+                node.setContentDescription("");
+                node.setBoundsInParent(new Rect(0, 0, 1, 1));
+                return;
+            }
+            VirtualMenuItem item = virtualItems.get(virtualViewId);
+            CharSequence description = item.getContentDescription();
+            node.setContentDescription(description == null ? "" : description);
+            node.setClassName(Button.class.getName());
+            node.setBoundsInParent(item.bounds.isEmpty() ? new Rect(0, 0, 1, 1) : item.bounds);
+            node.setClickable(true);
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, Bundle arguments) {
+            if (action == AccessibilityNodeInfoCompat.ACTION_CLICK
+                    && virtualViewId >= 0 && virtualViewId < virtualItems.size()) {
+                performVirtualItemClick(virtualItems.get(virtualViewId));
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 拖动预览的 seek 回调，都在主线程回调
+     */
+    public interface OnSeekListener {
+        /**
+         * 拖动过程中限流后的 seek
+         *
+         * @param progress 0-100
+         */
+        void onSeek(float progress);
+
+        /**
+         * 松手时回调一次，此时播放器已经 seek 到该位置，不需要重复 seek
+         *
+         * @param progress 0-100
+         */
+        void onSeekCommitted(float progress);
+    }
+
     /**
      * <p>
-     * 上拉隐藏，下拉显示的动作行为，配合 {@link FloatingMusicMenu} 使用更佳
+     * 按钮变更事务，记录所有的增删操作，提交时一次性应用到菜单
+     * </p>
+     */
+    public class ButtonTransaction {
+
+        private final List<View> buttons;
+
+        private ButtonTransaction(List<View> buttons) {
+            this.buttons = buttons;
+        }
+
+        /**
+         * 添加到第一个位置，与 {@link #addButton(FloatingActionButton)} 一致
+         */
+        public ButtonTransaction add(View button) {
+            buttons.remove(button);
+            buttons.add(0, button);
+            return this;
+        }
+
+        /**
+         * 添加到根按钮之前，与 {@link #addButtonAtLast(FloatingActionButton)} 一致
+         */
+        public ButtonTransaction addAtLast(View button) {
+            buttons.remove(button);
+            buttons.add(button);
+            return this;
+        }
+
+        public ButtonTransaction remove(View button) {
+            buttons.remove(button);
+            return this;
+        }
+
+        public ButtonTransaction clear() {
+            buttons.clear();
+            return this;
+        }
+
+        public void commit() {
+            setButtons(buttons);
+        }
+    }
+
+    /**
+     * <p>
+     * 上拉隐藏，下拉显示的动作行为，配合 {@link FloatingMusicMenu} 使用更佳。
+     * 同一方向累计滑动超过阈值才会切换，方向改变时重新累计；隐藏后菜单会暂停封面绘制。
      * </P>
      */
     public static class Behavior extends CoordinatorLayout.Behavior<FloatingMusicMenu> {
 
+        private static final float SCROLL_THRESHOLD_DP = 24;
+
+        private int accumulatedDy;
+
         public Behavior() {
             super();
         }
@@ -591,10 +1599,22 @@ public class FloatingMusicMenu extends ViewGroup {
         @Override
         public void onNestedScroll(CoordinatorLayout coordinatorLayout, FloatingMusicMenu child, View target, int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed) {
             super.onNestedScroll(coordinatorLayout, child, target, dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed);
-            if (dyConsumed > 30 && child.getVisibility() == VISIBLE) {
-                child.hide();
-            } else if (dyConsumed < -30 && child.getVisibility() == INVISIBLE) {
-                child.show();
+            if (dyConsumed == 0) return;
+            if ((dyConsumed > 0) != (accumulatedDy > 0)) {
+                accumulatedDy = 0;
+            }
+            accumulatedDy += dyConsumed;
+            float threshold = child.dp2px(SCROLL_THRESHOLD_DP);
+            if (accumulatedDy > threshold) {
+                accumulatedDy = 0;
+                if (!child.isHided()) {
+                    child.hide();
+                }
+            } else if (accumulatedDy < -threshold) {
+                accumulatedDy = 0;
+                if (child.isHided()) {
+                    child.show();
+                }
             }
         }
 
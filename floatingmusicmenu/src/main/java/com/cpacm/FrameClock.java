@@ -0,0 +1,16 @@
+package com.cpacm;
+
+/**
+ * <p>
+ * 帧时钟，默认使用 {@link android.os.SystemClock#uptimeMillis()}，测试时可以注入假的时钟
+ * </p>
+ *
+ * @author cpacm
+ */
+public interface FrameClock {
+
+    /**
+     * @return 单调递增的毫秒时间
+     */
+    long uptimeMillis();
+}
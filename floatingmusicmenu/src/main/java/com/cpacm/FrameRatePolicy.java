@@ -0,0 +1,84 @@
+package com.cpacm;
+
+/**
+ * <p>
+ * 封面旋转的帧率策略，决定 {@link RotatingProgressDrawable} 两帧之间的间隔。
+ * 帧率只影响刷新的频率，旋转的角速度保持不变。
+ * <ul>
+ * <li>{@link #fixed(int)} 固定帧率</li>
+ * <li>{@link #powerAware(PowerStateSource)} 省电模式和温控时自动降低帧率</li>
+ * </ul>
+ * </p>
+ *
+ * @author cpacm
+ */
+public abstract class FrameRatePolicy {
+
+    public static final int DEFAULT_FPS = 40;
+    public static final int POWER_SAVE_FPS = 20;
+    public static final int THROTTLED_FPS = 10;
+
+    /**
+     * 默认策略，与之前固定 25ms 的旋转间隔一致
+     */
+    public static final FrameRatePolicy DEFAULT = fixed(DEFAULT_FPS);
+
+    /**
+     * @return 当前的目标帧率
+     */
+    public abstract int getTargetFps();
+
+    /**
+     * @return 两帧之间的间隔（毫秒）
+     */
+    public long getFrameInterval() {
+        return 1000L / Math.max(1, getTargetFps());
+    }
+
+    /**
+     * 固定帧率
+     *
+     * @param fps 目标帧率
+     */
+    public static FrameRatePolicy fixed(final int fps) {
+        return new FrameRatePolicy() {
+            @Override
+            public int getTargetFps() {
+                return fps;
+            }
+        };
+    }
+
+    /**
+     * 省电模式下降到 {@link #POWER_SAVE_FPS}，温控达到中度时同样降到 {@link #POWER_SAVE_FPS}，
+     * 严重及以上降到 {@link #THROTTLED_FPS}
+     *
+     * @param source 电源状态来源
+     */
+    public static FrameRatePolicy powerAware(PowerStateSource source) {
+        return powerAware(source, DEFAULT_FPS, POWER_SAVE_FPS, THROTTLED_FPS);
+    }
+
+    /**
+     * @param source       电源状态来源
+     * @param fps          正常帧率上限
+     * @param powerSaveFps 省电模式或中度温控时的帧率
+     * @param throttledFps 严重温控时的帧率
+     */
+    public static FrameRatePolicy powerAware(final PowerStateSource source, final int fps,
+                                             final int powerSaveFps, final int throttledFps) {
+        return new FrameRatePolicy() {
+            @Override
+            public int getTargetFps() {
+                int thermal = source.getThermalStatus();
+                if (thermal >= PowerStateSource.THERMAL_STATUS_SEVERE) {
+                    return Math.min(fps, throttledFps);
+                }
+                if (thermal >= PowerStateSource.THERMAL_STATUS_MODERATE || source.isPowerSaveMode()) {
+                    return Math.min(fps, powerSaveFps);
+                }
+                return fps;
+            }
+        };
+    }
+}
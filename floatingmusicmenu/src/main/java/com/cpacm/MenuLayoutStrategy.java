@@ -0,0 +1,375 @@
+package com.cpacm;
+
+import android.util.SparseArray;
+
+/**
+ * <p>
+ * 菜单的排列方式：根据根按钮和各个菜单项的尺寸计算菜单的大小、每一项的位置以及收缩时的位移。
+ * 输入和输出都保存在可复用的 {@link Items} 数组中，布局过程中不分配对象。
+ * </p>
+ * <p>
+ * 内置 {@link #linear(int)} 四个方向的直线排列和 {@link #fan(int, int)} 贴靠在角落的四分之一圆扇形排列。
+ *
+ * @author cpacm
+ * </p>
+ */
+public abstract class MenuLayoutStrategy {
+
+    public final static int FAN_CORNER_BOTTOM_RIGHT = 0;
+    public final static int FAN_CORNER_BOTTOM_LEFT = 1;
+    public final static int FAN_CORNER_TOP_RIGHT = 2;
+    public final static int FAN_CORNER_TOP_LEFT = 3;
+
+    // 为回弹插值器预留的空间
+    static final float OVERSHOOT_SCALE = 1.2f;
+
+    private static final MenuLayoutStrategy[] LINEAR = {
+            new Linear(FloatingMusicMenu.FLOATING_DIRECTION_UP),
+            new Linear(FloatingMusicMenu.FLOATING_DIRECTION_LEFT),
+            new Linear(FloatingMusicMenu.FLOATING_DIRECTION_DOWN),
+            new Linear(FloatingMusicMenu.FLOATING_DIRECTION_RIGHT)
+    };
+
+    /**
+     * 直线排列
+     *
+     * @param direction {@link FloatingMusicMenu#FLOATING_DIRECTION_UP} 等四个方向
+     */
+    public static MenuLayoutStrategy linear(int direction) {
+        return LINEAR[direction >= 0 && direction < LINEAR.length ? direction : 0];
+    }
+
+    /**
+     * 四分之一圆的扇形排列，根按钮贴靠在 corner 指定的角落，菜单项从根按钮中心均匀分布在圆弧上
+     *
+     * @param corner {@link #FAN_CORNER_BOTTOM_RIGHT} 等四个角落
+     * @param radius 圆弧半径（像素），小于等于 0 时按照菜单项的尺寸自动计算，保证相邻的菜单项不重叠
+     */
+    public static MenuLayoutStrategy fan(int corner, int radius) {
+        return new Fan(corner, radius);
+    }
+
+    /**
+     * 计算菜单需要的大小
+     *
+     * @param items   各项的尺寸
+     * @param outSize 输出宽和高
+     */
+    public abstract void measure(Items items, int[] outSize);
+
+    /**
+     * 计算根按钮和每一项的位置以及收缩时的位移，结果写入 items。
+     * 不通过 Items 缓存结果的实现需要先调用 {@link Items#invalidateCache()}
+     *
+     * @param items  各项的尺寸
+     * @param width  菜单的宽度
+     * @param height 菜单的高度
+     */
+    public abstract void layout(Items items, int width, int height);
+
+    /**
+     * 第一个子按钮是否离根按钮最近，为 false 时最后一个子按钮离根按钮最近
+     */
+    public boolean isFirstChildNearest() {
+        return true;
+    }
+
+    /**
+     * 菜单的展开方向改变时（例如拖动贴靠到另一边）调用，返回之后使用的排列方式。
+     * 默认不受展开方向影响，返回自身
+     *
+     * @param direction {@link FloatingMusicMenu#FLOATING_DIRECTION_UP} 等四个方向
+     */
+    public MenuLayoutStrategy withDirection(int direction) {
+        return this;
+    }
+
+    static boolean isLinear(MenuLayoutStrategy strategy) {
+        return strategy instanceof Linear;
+    }
+
+    /**
+     * 菜单项的尺寸和布局结果，下标 0 为离根按钮最近的一项
+     */
+    public static final class Items {
+        public int count;
+        public int rootWidth, rootHeight;
+        public float interval;
+        public int padding;
+        public int[] widths = new int[0];
+        public int[] heights = new int[0];
+
+        public int rootLeft, rootTop;
+        public int[] lefts = new int[0];
+        public int[] tops = new int[0];
+        public float[] collapsedX = new float[0];
+        public float[] collapsedY = new float[0];
+
+        /**
+         * 保证数组容量，只在数量增加时重新分配
+         */
+        public void ensureCapacity(int capacity) {
+            if (widths.length >= capacity) return;
+            int size = Math.max(capacity, widths.length * 2);
+            invalidateCache();
+            widths = new int[size];
+            heights = new int[size];
+            lefts = new int[size];
+            tops = new int[size];
+            collapsedX = new float[size];
+            collapsedY = new float[size];
+        }
+
+        // 上一次布局的输入，输入不变时可以直接复用布局结果
+        private MenuLayoutStrategy cachedBy;
+        private int cachedWidth, cachedHeight, cachedCount, cachedRootWidth, cachedRootHeight, cachedPadding;
+        private float cachedInterval;
+        private int[] cachedWidths = new int[0];
+        private int[] cachedHeights = new int[0];
+
+        /**
+         * 丢弃缓存的布局结果。不使用缓存的排列方式在写入结果前必须调用，
+         * 否则之后切换回使用缓存的排列方式时会把其它排列方式写入的位置当作缓存命中
+         */
+        public void invalidateCache() {
+            cachedBy = null;
+        }
+
+        /**
+         * 与上一次布局的输入完全相同时返回 true，否则记录本次输入并返回 false
+         */
+        boolean checkCached(MenuLayoutStrategy strategy, int width, int height) {
+            boolean same = cachedBy == strategy && cachedWidth == width && cachedHeight == height
+                    && cachedCount == count && cachedRootWidth == rootWidth && cachedRootHeight == rootHeight
+                    && cachedPadding == padding && cachedInterval == interval;
+            for (int i = 0; same && i < count; i++) {
+                same = cachedWidths[i] == widths[i] && cachedHeights[i] == heights[i];
+            }
+            if (same) return true;
+            cachedBy = strategy;
+            cachedWidth = width;
+            cachedHeight = height;
+            cachedCount = count;
+            cachedRootWidth = rootWidth;
+            cachedRootHeight = rootHeight;
+            cachedPadding = padding;
+            cachedInterval = interval;
+            if (cachedWidths.length < widths.length) {
+                cachedWidths = new int[widths.length];
+                cachedHeights = new int[widths.length];
+            }
+            System.arraycopy(widths, 0, cachedWidths, 0, count);
+            System.arraycopy(heights, 0, cachedHeights, 0, count);
+            return false;
+        }
+
+        int maxWidth() {
+            int max = 0;
+            for (int i = 0; i < count; i++) max = Math.max(max, widths[i]);
+            return max;
+        }
+
+        int maxHeight() {
+            int max = 0;
+            for (int i = 0; i < count; i++) max = Math.max(max, heights[i]);
+            return max;
+        }
+    }
+
+    /**
+     * 直线排列，与原来四个方向的排列方式一致
+     */
+    private static final class Linear extends MenuLayoutStrategy {
+
+        private final int direction;
+
+        Linear(int direction) {
+            this.direction = direction;
+        }
+
+        private boolean isVertical() {
+            return direction == FloatingMusicMenu.FLOATING_DIRECTION_UP
+                    || direction == FloatingMusicMenu.FLOATING_DIRECTION_DOWN;
+        }
+
+        @Override
+        public boolean isFirstChildNearest() {
+            return direction == FloatingMusicMenu.FLOATING_DIRECTION_DOWN
+                    || direction == FloatingMusicMenu.FLOATING_DIRECTION_RIGHT;
+        }
+
+        @Override
+        public MenuLayoutStrategy withDirection(int direction) {
+            return linear(direction);
+        }
+
+        @Override
+        public void measure(Items items, int[] outSize) {
+            boolean vertical = isVertical();
+            int cross = vertical ? items.rootWidth : items.rootHeight;
+            int length = vertical ? items.rootHeight : items.rootWidth;
+            for (int i = 0; i < items.count; i++) {
+                cross = Math.max(cross, vertical ? items.widths[i] : items.heights[i]);
+                length += vertical ? items.heights[i] : items.widths[i];
+            }
+            cross += items.padding * 2;
+            length += items.padding * 2;
+            length += items.interval * items.count;
+            length = length * 12 / 10;
+            outSize[0] = vertical ? cross : length;
+            outSize[1] = vertical ? length : cross;
+        }
+
+        @Override
+        public void layout(Items items, int width, int height) {
+            items.invalidateCache();
+            switch (direction) {
+                case FloatingMusicMenu.FLOATING_DIRECTION_UP: {
+                    int centerX = width / 2;
+                    int offsetY = height - items.padding;
+                    items.rootLeft = centerX - items.rootWidth / 2;
+                    items.rootTop = offsetY - items.rootHeight;
+                    offsetY -= items.rootHeight + items.interval;
+                    for (int i = 0; i < items.count; i++) {
+                        items.lefts[i] = centerX - items.widths[i] / 2;
+                        items.tops[i] = offsetY - items.heights[i];
+                        items.collapsedX[i] = 0;
+                        items.collapsedY[i] = height - items.padding - offsetY;
+                        offsetY -= items.heights[i] + items.interval;
+                    }
+                    break;
+                }
+                case FloatingMusicMenu.FLOATING_DIRECTION_DOWN: {
+                    int centerX = width / 2;
+                    int offsetY = items.padding;
+                    items.rootLeft = centerX - items.rootWidth / 2;
+                    items.rootTop = offsetY;
+                    offsetY += items.rootHeight + items.interval;
+                    for (int i = 0; i < items.count; i++) {
+                        items.lefts[i] = centerX - items.widths[i] / 2;
+                        items.tops[i] = offsetY;
+                        items.collapsedX[i] = 0;
+                        items.collapsedY[i] = -offsetY;
+                        offsetY += items.heights[i] + items.interval;
+                    }
+                    break;
+                }
+                case FloatingMusicMenu.FLOATING_DIRECTION_LEFT: {
+                    int centerY = height / 2;
+                    int offsetX = width - items.padding;
+                    items.rootLeft = offsetX - items.rootWidth;
+                    items.rootTop = centerY - items.rootHeight / 2;
+                    offsetX -= items.rootWidth + items.interval;
+                    for (int i = 0; i < items.count; i++) {
+                        items.lefts[i] = offsetX - items.widths[i];
+                        items.tops[i] = centerY - items.heights[i] / 2;
+                        items.collapsedX[i] = width - items.padding - offsetX;
+                        items.collapsedY[i] = 0;
+                        offsetX -= items.widths[i] + items.interval;
+                    }
+                    break;
+                }
+                case FloatingMusicMenu.FLOATING_DIRECTION_RIGHT: {
+                    int centerY = height / 2;
+                    int offsetX = items.padding;
+                    items.rootLeft = offsetX;
+                    items.rootTop = centerY - items.rootHeight / 2;
+                    offsetX += items.rootWidth + items.interval;
+                    for (int i = 0; i < items.count; i++) {
+                        items.lefts[i] = offsetX;
+                        items.tops[i] = centerY - items.heights[i] / 2;
+                        items.collapsedX[i] = -offsetX;
+                        items.collapsedY[i] = 0;
+                        offsetX += items.widths[i] + items.interval;
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 四分之一圆的扇形排列。每个数量对应的单位向量只计算一次并在所有扇形菜单之间共享，
+     * 输入不变时直接复用 {@link Items} 中上一次的布局结果
+     */
+    private static final class Fan extends MenuLayoutStrategy {
+
+        // 数量 -> {sin0, cos0, sin1, cos1, ...}，角度从竖直方向开始
+        private static final SparseArray<float[]> unitVectors = new SparseArray<>();
+
+        private final int corner;
+        private final int radius;
+
+        Fan(int corner, int radius) {
+            this.corner = corner;
+            this.radius = radius;
+        }
+
+        private static synchronized float[] getUnitVectors(int count) {
+            float[] vectors = unitVectors.get(count);
+            if (vectors == null) {
+                vectors = new float[count * 2];
+                double step = count > 1 ? Math.PI / 2 / (count - 1) : 0;
+                for (int i = 0; i < count; i++) {
+                    double angle = count > 1 ? step * i : Math.PI / 4;
+                    vectors[i * 2] = (float) Math.sin(angle);
+                    vectors[i * 2 + 1] = (float) Math.cos(angle);
+                }
+                unitVectors.put(count, vectors);
+            }
+            return vectors;
+        }
+
+        private float resolveRadius(Items items) {
+            int rootHalf = Math.max(items.rootWidth, items.rootHeight) / 2;
+            int itemSize = Math.max(items.maxWidth(), items.maxHeight());
+            float minRadius = rootHalf + itemSize / 2f + items.interval;
+            if (radius > 0) return Math.max(radius, minRadius);
+            if (items.count < 2) return minRadius;
+            // 相邻两项中心之间的弦长不小于菜单项尺寸加间隔
+            double halfStep = Math.PI / 4 / (items.count - 1);
+            return Math.max(minRadius, (float) ((itemSize + items.interval) / (2 * Math.sin(halfStep))));
+        }
+
+        private boolean isRight() {
+            return corner == FAN_CORNER_BOTTOM_RIGHT || corner == FAN_CORNER_TOP_RIGHT;
+        }
+
+        private boolean isBottom() {
+            return corner == FAN_CORNER_BOTTOM_RIGHT || corner == FAN_CORNER_BOTTOM_LEFT;
+        }
+
+        @Override
+        public void measure(Items items, int[] outSize) {
+            float r = resolveRadius(items);
+            int extentX = (int) ((r + items.maxWidth() / 2f) * OVERSHOOT_SCALE);
+            int extentY = (int) ((r + items.maxHeight() / 2f) * OVERSHOOT_SCALE);
+            outSize[0] = items.padding * 2 + items.rootWidth / 2 + Math.max(items.rootWidth / 2, extentX);
+            outSize[1] = items.padding * 2 + items.rootHeight / 2 + Math.max(items.rootHeight / 2, extentY);
+        }
+
+        @Override
+        public void layout(Items items, int width, int height) {
+            if (items.checkCached(this, width, height)) return;
+            float r = resolveRadius(items);
+            float signX = isRight() ? -1 : 1;
+            float signY = isBottom() ? -1 : 1;
+            float centerX = isRight() ? width - items.padding - items.rootWidth / 2f
+                    : items.padding + items.rootWidth / 2f;
+            float centerY = isBottom() ? height - items.padding - items.rootHeight / 2f
+                    : items.padding + items.rootHeight / 2f;
+            items.rootLeft = Math.round(centerX - items.rootWidth / 2f);
+            items.rootTop = Math.round(centerY - items.rootHeight / 2f);
+            float[] vectors = getUnitVectors(items.count);
+            for (int i = 0; i < items.count; i++) {
+                float dx = signX * vectors[i * 2] * r;
+                float dy = signY * vectors[i * 2 + 1] * r;
+                items.lefts[i] = Math.round(centerX + dx - items.widths[i] / 2f);
+                items.tops[i] = Math.round(centerY + dy - items.heights[i] / 2f);
+                // 收缩时回到根按钮中心
+                items.collapsedX[i] = -dx;
+                items.collapsedY[i] = -dy;
+            }
+        }
+    }
+}
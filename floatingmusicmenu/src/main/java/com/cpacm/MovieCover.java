@@ -0,0 +1,94 @@
+package com.cpacm;
+
+import android.graphics.Canvas;
+import android.graphics.Movie;
+import android.os.SystemClock;
+
+import java.io.InputStream;
+
+/**
+ * <p>
+ * 基于 {@link Movie} 的 GIF 动态封面，按照 {@link Movie#duration()} 循环。
+ * 播放时间按照采样步长推进，解码落后时追上实际经过的时间，不会因为解码慢而变成慢放。
+ * API 28 及以上可以使用 {@link AnimatedImageCover}，按照每一帧自己的时长切换。
+ * </p>
+ * <p>
+ *
+ * @author cpacm
+ * </p>
+ */
+@SuppressWarnings("deprecation")
+public class MovieCover implements AnimatedCover {
+
+    /**
+     * GIF 的帧延时以 10 毫秒为单位，绝大多数解码器不支持低于 20 毫秒的延时
+     */
+    public static final int DEFAULT_FRAME_DURATION = 20;
+    // 只有一帧的 GIF 不需要频繁重绘
+    static final int STILL_FRAME_DURATION = 1000;
+
+    private final Movie movie;
+    private final int frameDuration;
+    private long startTime = -1;
+    private long time;
+
+    /**
+     * @param movie         已经解码的 GIF
+     * @param frameDuration 采样步长（毫秒），{@link Movie} 无法提供每一帧的时长，步长越小越接近原始帧率
+     */
+    public MovieCover(Movie movie, int frameDuration) {
+        this.movie = movie;
+        this.frameDuration = Math.max(1, frameDuration);
+    }
+
+    /**
+     * @return 解码失败时返回 null
+     */
+    public static MovieCover decode(InputStream is) {
+        Movie movie = Movie.decodeStream(is);
+        return movie == null ? null : new MovieCover(movie, DEFAULT_FRAME_DURATION);
+    }
+
+    /**
+     * @return 解码失败时返回 null
+     */
+    public static MovieCover decode(byte[] data) {
+        Movie movie = Movie.decodeByteArray(data, 0, data.length);
+        return movie == null ? null : new MovieCover(movie, DEFAULT_FRAME_DURATION);
+    }
+
+    @Override
+    public int getWidth() {
+        return movie.width();
+    }
+
+    @Override
+    public int getHeight() {
+        return movie.height();
+    }
+
+    @Override
+    public long drawNextFrame(Canvas canvas) {
+        int duration = movie.duration();
+        if (duration <= 0) {
+            movie.setTime(0);
+            movie.draw(canvas, 0, 0);
+            return STILL_FRAME_DURATION;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (startTime < 0) {
+            startTime = now;
+            time = 0;
+        } else {
+            // 提前缓冲的帧按照步长排在后面，解码落后时以时钟为准
+            time = Math.max(time + frameDuration, now - startTime);
+        }
+        movie.setTime((int) (time % duration));
+        movie.draw(canvas, 0, 0);
+        return frameDuration;
+    }
+
+    @Override
+    public void release() {
+    }
+}
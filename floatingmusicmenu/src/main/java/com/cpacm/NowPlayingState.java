@@ -0,0 +1,191 @@
+package com.cpacm;
+
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+
+/**
+ * <p>
+ * 不可变的"正在播放"状态，包含封面、进度、缓冲进度、播放状态和可选的颜色配置。
+ * 通过 {@link FloatingMusicMenu#setNowPlayingState(NowPlayingState)} 整体提交，
+ * 菜单会与上一次的状态比较，只应用发生变化的部分。
+ * </p>
+ * <p>
+ * 封面优先通过 key 比较，没有 key 时比较封面对象本身；颜色为 null 时表示不修改当前配置。
+ *
+ * @author cpacm
+ * </p>
+ */
+public final class NowPlayingState {
+
+    final String coverKey;
+    final Drawable coverDrawable;
+    final Bitmap coverBitmap;
+    final AnimatedCover animatedCover;
+    final long crossfadeMillis;
+    final float progress;
+    final float bufferedProgress;
+    final boolean playing;
+    final Integer progressColor;
+    final ColorStateList backgroundTint;
+
+    private NowPlayingState(Builder builder) {
+        coverKey = builder.coverKey;
+        coverDrawable = builder.coverDrawable;
+        coverBitmap = builder.coverBitmap;
+        animatedCover = builder.animatedCover;
+        crossfadeMillis = builder.crossfadeMillis;
+        progress = builder.progress;
+        bufferedProgress = builder.bufferedProgress;
+        playing = builder.playing;
+        progressColor = builder.progressColor;
+        backgroundTint = builder.backgroundTint;
+    }
+
+    public String getCoverKey() {
+        return coverKey;
+    }
+
+    public float getProgress() {
+        return progress;
+    }
+
+    public float getBufferedProgress() {
+        return bufferedProgress;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    boolean hasCover() {
+        return coverDrawable != null || coverBitmap != null || animatedCover != null;
+    }
+
+    /**
+     * 封面是否与另一个状态相同
+     */
+    boolean hasSameCover(NowPlayingState other) {
+        if (coverKey != null || other.coverKey != null) {
+            return coverKey != null && coverKey.equals(other.coverKey);
+        }
+        return coverDrawable == other.coverDrawable && coverBitmap == other.coverBitmap
+                && animatedCover == other.animatedCover;
+    }
+
+    /**
+     * 以当前状态为基础修改，例如只更新进度
+     */
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    public static final class Builder {
+        private String coverKey;
+        private Drawable coverDrawable;
+        private Bitmap coverBitmap;
+        private AnimatedCover animatedCover;
+        private long crossfadeMillis;
+        private float progress;
+        private float bufferedProgress;
+        private boolean playing;
+        private Integer progressColor;
+        private ColorStateList backgroundTint;
+
+        public Builder() {
+        }
+
+        private Builder(NowPlayingState state) {
+            coverKey = state.coverKey;
+            coverDrawable = state.coverDrawable;
+            coverBitmap = state.coverBitmap;
+            animatedCover = state.animatedCover;
+            crossfadeMillis = state.crossfadeMillis;
+            progress = state.progress;
+            bufferedProgress = state.bufferedProgress;
+            playing = state.playing;
+            progressColor = state.progressColor;
+            backgroundTint = state.backgroundTint;
+        }
+
+        /**
+         * @param cover    封面
+         * @param coverKey 封面的唯一标识，例如专辑 id，可以为 null
+         */
+        public Builder setCover(Drawable cover, String coverKey) {
+            clearCover();
+            this.coverDrawable = cover;
+            this.coverKey = coverKey;
+            return this;
+        }
+
+        public Builder setCover(Bitmap cover, String coverKey) {
+            clearCover();
+            this.coverBitmap = cover;
+            this.coverKey = coverKey;
+            return this;
+        }
+
+        public Builder setCover(AnimatedCover cover, String coverKey) {
+            clearCover();
+            this.animatedCover = cover;
+            this.coverKey = coverKey;
+            return this;
+        }
+
+        /**
+         * 更换位图封面时的淡入时长，为 0 时直接切换
+         */
+        public Builder setCrossfadeMillis(long crossfadeMillis) {
+            this.crossfadeMillis = crossfadeMillis;
+            return this;
+        }
+
+        /**
+         * @param progress 0-100
+         */
+        public Builder setProgress(float progress) {
+            this.progress = progress;
+            return this;
+        }
+
+        /**
+         * @param bufferedProgress 0-100
+         */
+        public Builder setBufferedProgress(float bufferedProgress) {
+            this.bufferedProgress = bufferedProgress;
+            return this;
+        }
+
+        public Builder setPlaying(boolean playing) {
+            this.playing = playing;
+            return this;
+        }
+
+        /**
+         * @param progressColor 为 null 时不修改
+         */
+        public Builder setProgressColor(Integer progressColor) {
+            this.progressColor = progressColor;
+            return this;
+        }
+
+        /**
+         * @param backgroundTint 为 null 时不修改
+         */
+        public Builder setBackgroundTint(ColorStateList backgroundTint) {
+            this.backgroundTint = backgroundTint;
+            return this;
+        }
+
+        public NowPlayingState build() {
+            return new NowPlayingState(this);
+        }
+
+        private void clearCover() {
+            coverDrawable = null;
+            coverBitmap = null;
+            animatedCover = null;
+        }
+    }
+}
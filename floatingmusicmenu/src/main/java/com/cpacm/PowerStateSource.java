@@ -0,0 +1,27 @@
+package com.cpacm;
+
+/**
+ * <p>
+ * 电源状态来源，供 {@link FrameRatePolicy} 判断是否需要降低帧率。
+ * 默认实现为 {@link AndroidPowerStateSource}，测试时可以注入固定的状态。
+ * </p>
+ *
+ * @author cpacm
+ */
+public interface PowerStateSource {
+
+    int THERMAL_STATUS_NONE = 0;
+    int THERMAL_STATUS_LIGHT = 1;
+    int THERMAL_STATUS_MODERATE = 2;
+    int THERMAL_STATUS_SEVERE = 3;
+
+    /**
+     * @return 是否处于省电模式
+     */
+    boolean isPowerSaveMode();
+
+    /**
+     * @return 温控状态，取值与 {@code PowerManager.THERMAL_STATUS_*} 一致，不支持时返回 {@link #THERMAL_STATUS_NONE}
+     */
+    int getThermalStatus();
+}
@@ -0,0 +1,84 @@
+package com.cpacm;
+
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * 进程级的封面保留容器，用于在屏幕旋转等配置变更时保留已经光栅化的封面位图和进度条配置，
+ * 避免重建 {@link RotatingProgressDrawable} 时重新解码和绘制封面。
+ * </p>
+ * <p>
+ * 位图本身无法放入 {@link android.os.Bundle}，所以 Bundle 中只保存一个 key，
+ * 真正的数据保存在这里；进程被回收后 key 失效，调用方需要回退到重新设置封面。
+ *
+ * @author cpacm
+ * </p>
+ */
+final class RetainedCoverHolder {
+
+    private static final int MAX_RETAINED_COVERS = 8;
+
+    private static final Map<String, Entry> entries = new LinkedHashMap<>(MAX_RETAINED_COVERS, 0.75f, true);
+    private static int nextKey = 0;
+
+    private RetainedCoverHolder() {
+    }
+
+    /**
+     * 保留封面和进度条配置。同一个按钮每次保存状态时传入上一次得到的 key，覆盖之前保留的数据，
+     * 反复保存（例如每次切到后台）不会占满容器
+     *
+     * @param previousKey 同一个按钮上一次得到的 key，第一次为 null
+     * @return 用于取回的 key
+     */
+    static synchronized String retain(String previousKey, Bitmap cover, String coverKey, int percent, int color,
+                                      ColorStateList backgroundHint) {
+        String key = previousKey != null ? previousKey : "fmb_cover_" + (nextKey++);
+        entries.put(key, new Entry(cover, coverKey, percent, color, backgroundHint));
+        trim();
+        return key;
+    }
+
+    /**
+     * 取回并移除保留的数据
+     *
+     * @param key {@link #retain} 返回的 key
+     * @return 不存在时返回 null
+     */
+    static synchronized Entry take(String key) {
+        if (key == null) return null;
+        return entries.remove(key);
+    }
+
+    /**
+     * 丢弃最久未使用的数据，避免没有被恢复的页面一直占用位图
+     */
+    private static void trim() {
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (entries.size() > MAX_RETAINED_COVERS && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    static final class Entry {
+        final Bitmap cover;
+        final String coverKey;
+        final int percent;
+        final int color;
+        final ColorStateList backgroundHint;
+
+        Entry(Bitmap cover, String coverKey, int percent, int color, ColorStateList backgroundHint) {
+            this.cover = cover;
+            this.coverKey = coverKey;
+            this.percent = percent;
+            this.color = color;
+            this.backgroundHint = backgroundHint;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.cpacm;
 
+import android.app.ActivityManager;
+import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapShader;
@@ -7,17 +9,26 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.Matrix;
+import android.graphics.Outline;
 import android.graphics.Paint;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
+import android.graphics.SweepGradient;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -31,21 +42,100 @@ import android.os.Message;
  */
 public class RotatingProgressDrawable extends Drawable {
 
+    /**
+     * 每帧通过 {@link BitmapShader} 绘制抗锯齿的圆形
+     */
+    public static final int RENDER_MODE_SHADER = 0;
+    /**
+     * 设置封面时在后台线程预先裁剪出圆形位图，每帧只绘制一次带过滤的位图
+     */
+    public static final int RENDER_MODE_BAKED = 1;
+    /**
+     * 快照的最大边长，ARGB_8888 时约 256KB，远低于跨进程传输的 1MB 限制
+     */
+    public static final int MAX_SNAPSHOT_SIZE = 256;
+    // 低于该内存等级的设备视为低端设备
+    private static final int LOW_END_MEMORY_CLASS_MB = 128;
+    private static int defaultRenderMode = RENDER_MODE_SHADER;
+
     private static final int COLORDRAWABLE_DIMENSION = 2;
     private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_4444;
-    private static final int ROTATION_DEFAULT_SPEED = 25;
-    private Paint mPaint, progressPaint;
+    private static final int MSG_ROTATE = 0;
+    private static final int MSG_APPLY_ROTATE = 1;
+    private static final int MSG_INVALIDATE = 2;
+    private static final int MSG_RELEASE_COVER = 3;
+    private static final int MSG_ANIMATED_FRAME = 4;
+    private static final FrameClock SYSTEM_CLOCK = new FrameClock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+    private static final int BUFFERED_DEFAULT_ALPHA = 0x66;
+    private Paint mPaint, progressPaint, bufferedPaint, trackPaint;
     private Drawable drawable;
+    private Bitmap coverBitmap;
     private int mWidth;
     private float mRotation;
     private RectF rectF;
+    private int mAlpha = 0xFF;
+    private boolean coverOpaque;
+    private boolean fadeCoverOpaque;
+
+    // 预先裁剪的圆形封面，准备好之前仍然使用 shader 绘制
+    private int renderMode = RENDER_MODE_SHADER;
+    private Bitmap bakedBitmap;
+    private Paint bakedPaint;
+    // 每次请求裁剪加一，位图可能通过 inBitmap 复用，不能用位图本身判断结果是否过期
+    private int bakeGeneration;
+
+    // 封面淡入淡出，只在切换封面时分配新的 shader，绘制时不分配对象
+    private Paint fadePaint;
+    private Matrix fadeMatrix;
+    private Bitmap outgoingBitmap;
+    private long fadeStart;
+    private long fadeDuration;
+    private boolean fading;
+    private OnCoverReleasedListener fadeListener;
+    // 等待回调的旧封面，统一在 MSG_RELEASE_COVER 中依次回调
+    private final ArrayList<Bitmap> releasedBitmaps = new ArrayList<>();
+    private final ArrayList<OnCoverReleasedListener> releasedListeners = new ArrayList<>();
 
-    private float progress;//进度条
+    // 动态封面，帧在后台线程提前绘制
+    private AnimatedCoverPlayer animatedPlayer;
+    // 图集中的封面，使用整页共享的 shader，绘制时平移到所在区域
+    private CoverAtlas.Region atlasRegion;
+    private int atlasLeft, atlasTop;
+
+    // 进度（角度）以 float 位的形式原子保存，任意线程写入，主线程每帧读取一次
+    private final AtomicInteger progressBits = new AtomicInteger();//进度条
     private int progressPercent;//进度条宽度
     private int progressColor;//进度条颜色
+    private final AtomicInteger bufferedBits = new AtomicInteger();//缓冲进度
+    private int bufferedColor;//缓冲进度条颜色，0 表示跟随进度条颜色
+    private int[] gradientColors;//进度条渐变色
+    private Matrix gradientMatrix;
+    private int gradientWidth;
 
     // 旋转控制
     private RotateHandler rotateHandler;
+    private RotationTicker rotationTicker;
+    private boolean rotating;
+    private volatile boolean renderingPaused;
+    private final AtomicBoolean rotateRequest = new AtomicBoolean();
+    private final AtomicBoolean rotateRequestPending = new AtomicBoolean();
+    private final AtomicBoolean invalidatePending = new AtomicBoolean();
+    // 其它线程请求的重绘，执行时先清除标记，即使这次重绘没有真正触发 draw() 也不会让之后的请求被忽略
+    private final Runnable invalidateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            invalidatePending.set(false);
+            invalidateSelf();
+        }
+    };
+    // 任何会改变画面的操作都会加一，用于判断快照是否需要重新导出
+    private final AtomicInteger contentVersion = new AtomicInteger();
+    private Canvas snapshotCanvas;
 
     public RotatingProgressDrawable(Drawable drawable) {
         initDrawable();
@@ -59,18 +149,114 @@ public class RotatingProgressDrawable extends Drawable {
         circleBitmapFromDrawable(drawable);
     }
 
+    private RotatingProgressDrawable() {
+        initDrawable();
+    }
+
+    /**
+     * 直接使用已经光栅化好的封面位图，不会再次绘制
+     *
+     * @param cover {@link #getCoverBitmap()} 得到的位图
+     */
+    static RotatingProgressDrawable fromRasterizedCover(Bitmap cover) {
+        RotatingProgressDrawable rotatingDrawable = new RotatingProgressDrawable();
+        rotatingDrawable.circleBitmap(cover);
+        return rotatingDrawable;
+    }
+
+    /**
+     * 使用动态封面，帧在后台线程绘制到 {@link AnimatedCoverPlayer#BUFFER_SIZE} 张复用的位图中，
+     * 按照每一帧的时长切换。第一帧准备好之前只绘制进度条。
+     *
+     * @param cover 帧来源，不再使用时由 {@link #releaseAnimatedCover()} 释放
+     * @param size  绘制尺寸（像素），通常为按钮的显示尺寸
+     */
+    public static RotatingProgressDrawable fromAnimatedCover(AnimatedCover cover, int size) {
+        RotatingProgressDrawable rotatingDrawable = new RotatingProgressDrawable();
+        rotatingDrawable.animatedPlayer = new AnimatedCoverPlayer(cover, size);
+        rotatingDrawable.mWidth = rotatingDrawable.animatedPlayer.getSize();
+        rotatingDrawable.updateStrokeWidth();
+        rotatingDrawable.updateProgressShader();
+        rotatingDrawable.animatedPlayer.start();
+        rotatingDrawable.rotateHandler.sendEmptyMessage(MSG_ANIMATED_FRAME);
+        return rotatingDrawable;
+    }
+
+    /**
+     * 使用图集中的封面，同一页的所有 drawable 共用一个 shader
+     *
+     * @param region {@link CoverAtlas#acquire} 得到的区域，不再使用时由 {@link #releaseResources()} 释放
+     */
+    static RotatingProgressDrawable fromAtlasRegion(CoverAtlas.Region region) {
+        RotatingProgressDrawable rotatingDrawable = new RotatingProgressDrawable();
+        rotatingDrawable.atlasRegion = region;
+        rotatingDrawable.atlasLeft = region.left;
+        rotatingDrawable.atlasTop = region.top;
+        rotatingDrawable.mPaint.setShader(region.page.shader);
+        rotatingDrawable.mWidth = region.getSize();
+        rotatingDrawable.coverOpaque = isOpaqueCircle(region.page.bitmap, region.left, region.top, region.getSize());
+        rotatingDrawable.updateStrokeWidth();
+        rotatingDrawable.updateProgressShader();
+        return rotatingDrawable;
+    }
+
+    /**
+     * 释放动态封面的解码器和图集区域，更换封面时调用
+     */
+    void releaseResources() {
+        releaseAnimatedCover();
+        if (atlasRegion != null) {
+            atlasRegion.getAtlas().release(atlasRegion);
+            atlasRegion = null;
+        }
+    }
+
+    /**
+     * 是否为动态封面
+     */
+    public boolean isAnimatedCover() {
+        return animatedPlayer != null;
+    }
+
+    /**
+     * 停止动态封面的解码并释放帧来源，drawable 保持显示最后一帧
+     */
+    public void releaseAnimatedCover() {
+        if (animatedPlayer == null) return;
+        animatedPlayer.release();
+        rotateHandler.removeMessages(MSG_ANIMATED_FRAME);
+    }
+
     private void initDrawable() {
         progressPercent = 3;
-        progress = 0f;
+        progressBits.set(Float.floatToIntBits(0f));
         progressColor = Color.RED;
 
         rotateHandler = new RotateHandler(Looper.getMainLooper());
+        rotationTicker = new RotationTicker(SYSTEM_CLOCK, FrameRatePolicy.DEFAULT);
 
         rectF = new RectF();
+        mPaint = new Paint();
+        mPaint.setAntiAlias(true);
+        fadePaint = new Paint();
+        fadePaint.setAntiAlias(true);
+        fadeMatrix = new Matrix();
+        bakedPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
         progressPaint = new Paint();
         progressPaint.setColor(progressColor);
         progressPaint.setStyle(Paint.Style.STROKE);
         progressPaint.setAntiAlias(true);
+
+        bufferedPaint = new Paint();
+        bufferedPaint.setStyle(Paint.Style.STROKE);
+        bufferedPaint.setAntiAlias(true);
+        updateBufferedColor();
+        gradientMatrix = new Matrix();
+
+        trackPaint = new Paint();
+        trackPaint.setStyle(Paint.Style.STROKE);
+        trackPaint.setAntiAlias(true);
     }
 
 
@@ -82,37 +268,306 @@ public class RotatingProgressDrawable extends Drawable {
     @SuppressWarnings("UnusedDeclaration")
     public void setRotation(float rotation) {
         mRotation = rotation;
+        rotationTicker.setRotation(rotation);
         invalidateSelf();
     }
 
+    /**
+     * 设置旋转的帧率策略，默认为 {@link FrameRatePolicy#DEFAULT}
+     *
+     * @param policy 帧率策略
+     */
+    public void setFrameRatePolicy(FrameRatePolicy policy) {
+        rotationTicker.setPolicy(policy == null ? FrameRatePolicy.DEFAULT : policy);
+    }
+
+    public FrameRatePolicy getFrameRatePolicy() {
+        return rotationTicker.getPolicy();
+    }
+
     @Override
     public void draw(Canvas canvas) {
+        invalidatePending.set(false);
+        drawFrame(canvas, getBounds().centerX(), getBounds().centerY());
+        if (animatedPlayer != null) {
+            animatedPlayer.onFrameDrawn();
+        }
+        if (fading && !rotating) {
+            // 旋转时每帧都会重绘，静止时需要自己驱动淡入
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * 绘制封面和进度条，不修改 bounds，也不会请求重绘
+     *
+     * @param pivotX 旋转中心
+     * @param pivotY 旋转中心
+     */
+    private void drawFrame(Canvas canvas, float pivotX, float pivotY) {
+        float progress = Float.intBitsToFloat(progressBits.get());
+        float bufferedProgress = Float.intBitsToFloat(bufferedBits.get());
         float progressWidth = mWidth * progressPercent / 100f;
         float halfWidth = progressWidth / 2;
         // 画背景图
         canvas.save();
-        canvas.rotate(mRotation, getBounds().centerX(), getBounds().centerY());
+        canvas.rotate(mRotation, pivotX, pivotY);
         float scale = 1 - progressWidth * 2.0f / mWidth;
         canvas.scale(scale, scale, mWidth / 2.0f, mWidth / 2.0f);
-        canvas.drawCircle(mWidth / 2, mWidth / 2, mWidth / 2, mPaint);
+        float fraction = 0f;
+        if (fading) {
+            fraction = fadeDuration <= 0 ? 1f
+                    : Math.max(0f, (SystemClock.uptimeMillis() - fadeStart) / (float) fadeDuration);
+        }
+        // 新封面不透明时直接盖住旧封面；有透明部分时旧封面同时淡出，避免从透明处透出来
+        int outgoingAlpha = fading && !fadeCoverOpaque ? Math.round(mAlpha * Math.max(0f, 1f - fraction)) : mAlpha;
+        if (outgoingAlpha != mAlpha) {
+            mPaint.setAlpha(outgoingAlpha);
+            bakedPaint.setAlpha(outgoingAlpha);
+        }
+        if (atlasRegion != null) {
+            // 平移后整页的 shader 正好对齐到所在区域，不需要单独的 shader
+            canvas.translate(-atlasLeft, -atlasTop);
+            canvas.drawCircle(atlasLeft + mWidth / 2, atlasTop + mWidth / 2, mWidth / 2, mPaint);
+            canvas.translate(atlasLeft, atlasTop);
+        } else if (bakedBitmap != null) {
+            canvas.drawBitmap(bakedBitmap, 0, 0, bakedPaint);
+        } else if (mPaint.getShader() != null) {
+            canvas.drawCircle(mWidth / 2, mWidth / 2, mWidth / 2, mPaint);
+        }
+        if (outgoingAlpha != mAlpha) {
+            mPaint.setAlpha(mAlpha);
+            bakedPaint.setAlpha(mAlpha);
+        }
+        if (fading) {
+            // 淡入期间在旧封面上叠加新封面，只多一次填充
+            if (fraction >= 1f) {
+                finishCrossfade();
+                canvas.drawCircle(mWidth / 2, mWidth / 2, mWidth / 2, mPaint);
+            } else {
+                fadePaint.setAlpha(Math.round(mAlpha * fraction));
+                canvas.drawCircle(mWidth / 2, mWidth / 2, mWidth / 2, fadePaint);
+            }
+        }
         canvas.restore();
-        // 画进度条
+        // 画进度条，缓冲部分只画在已播放部分之后
         rectF.set(halfWidth, halfWidth, mWidth - halfWidth, mWidth - halfWidth);
+        float drawn = Math.max(progress, bufferedProgress);
+        if (trackPaint.getColor() != 0 && drawn < 360) {
+            // 底色只画在进度条没有覆盖的部分，每个像素只绘制一次
+            canvas.drawArc(rectF, -90 + drawn, 360 - drawn, false, trackPaint);
+        }
+        if (bufferedProgress > progress) {
+            canvas.drawArc(rectF, -90 + progress, bufferedProgress - progress, false, bufferedPaint);
+        }
         canvas.drawArc(rectF, -90, progress, false, progressPaint);
     }
 
     /**
-     * set progress
-     * 设置进度
+     * 在 durationMillis 内从当前封面淡入到新封面，旋转角度保持连续。
+     * 新封面按居中裁剪缩放到当前尺寸，不会创建中间位图；淡入结束后旧封面位图通过 listener 交还，
+     * 调用方可以用于解码下一张封面（{@link android.graphics.BitmapFactory.Options#inBitmap}）。
+     * 上一次淡入还没结束时会立即完成上一次淡入。
+     *
+     * @param cover          新封面
+     * @param durationMillis 淡入时长，小于等于 0 时直接切换
+     * @param listener       旧封面不再被绘制时在主线程回调，可以为 null
+     */
+    public void crossfadeTo(Bitmap cover, long durationMillis, OnCoverReleasedListener listener) {
+        if (cover == null || cover == coverBitmap) return;
+        if (animatedPlayer != null || atlasRegion != null) {
+            // 动态封面的帧位图和图集都会被继续复用，不能作为旧封面淡出，直接切换为静态封面
+            releaseResources();
+            animatedPlayer = null;
+            BitmapShader shader = new BitmapShader(cover, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            setCoverMatrix(fadeMatrix, cover);
+            shader.setLocalMatrix(fadeMatrix);
+            mPaint.setShader(shader);
+            coverBitmap = cover;
+            coverOpaque = isOpaqueCircle(cover);
+            requestBake();
+            invalidateSelf();
+            return;
+        }
+        if (fading) {
+            finishCrossfade();
+        }
+        if (mWidth <= 0) {
+            circleBitmap(cover);
+            invalidateSelf();
+            return;
+        }
+        setCoverMatrix(fadeMatrix, cover);
+        BitmapShader shader = new BitmapShader(cover, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        shader.setLocalMatrix(fadeMatrix);
+        fadePaint.setShader(shader);
+        fadePaint.setColorFilter(mPaint.getColorFilter());
+        fadePaint.setAlpha(0);
+        fadeCoverOpaque = isOpaqueCircle(cover);
+        outgoingBitmap = coverBitmap;
+        coverBitmap = cover;
+        fadeListener = listener;
+        fadeStart = SystemClock.uptimeMillis();
+        fadeDuration = durationMillis;
+        fading = true;
+        if (durationMillis <= 0 || renderingPaused) {
+            finishCrossfade();
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * 新封面成为当前封面：交换两个画笔，旧封面的位图交还给调用方
+     */
+    private void finishCrossfade() {
+        fading = false;
+        Paint paint = mPaint;
+        mPaint = fadePaint;
+        fadePaint = paint;
+        fadePaint.setShader(null);
+        mPaint.setAlpha(mAlpha);
+        coverOpaque = fadeCoverOpaque;
+        // 淡入期间继续绘制旧封面的圆形位图，结束后再裁剪新封面
+        requestBake();
+        releaseCover(outgoingBitmap, fadeListener);
+        outgoingBitmap = null;
+        fadeListener = null;
+    }
+
+    /**
+     * 在绘制结束后再回调，避免调用方在 draw 过程中回收位图；
+     * 回调之前连续切换的多张旧封面排队，按照切换顺序依次回调
+     */
+    private void releaseCover(Bitmap bitmap, OnCoverReleasedListener listener) {
+        if (bitmap == null || listener == null) return;
+        releasedBitmaps.add(bitmap);
+        releasedListeners.add(listener);
+        if (releasedBitmaps.size() == 1) {
+            rotateHandler.sendEmptyMessage(MSG_RELEASE_COVER);
+        }
+    }
+
+    private void dispatchCoverReleased() {
+        // 回调中可能再次切换封面，先取出当前排队的部分
+        int count = releasedBitmaps.size();
+        for (int i = 0; i < count; i++) {
+            releasedListeners.get(i).onCoverReleased(releasedBitmaps.get(i));
+        }
+        releasedBitmaps.subList(0, count).clear();
+        releasedListeners.subList(0, count).clear();
+        if (!releasedBitmaps.isEmpty()) {
+            rotateHandler.sendEmptyMessage(MSG_RELEASE_COVER);
+        }
+    }
+
+    /**
+     * 把任意尺寸的封面居中裁剪到当前的绘制尺寸
+     */
+    private void setCoverMatrix(Matrix matrix, Bitmap cover) {
+        int size = Math.min(cover.getWidth(), cover.getHeight());
+        float scale = mWidth / (float) size;
+        matrix.setTranslate(-(cover.getWidth() - size) / 2f, -(cover.getHeight() - size) / 2f);
+        matrix.postScale(scale, scale);
+    }
+
+    /**
+     * 封面圆形区域内是否完全不透明，淡入期间需要新旧封面都不透明。
+     * 不透明时圆形之外只剩下进度条所在的圆环可见，背景只需要绘制圆环部分。
+     */
+    public boolean isCoverOpaque() {
+        return coverOpaque && mAlpha == 0xFF && (!fading || fadeCoverOpaque);
+    }
+
+    /**
+     * 设置进度条底部圆环的颜色，为 0 时不绘制。
+     * 配合不透明的封面使用时可以代替按钮背景，避免封面下方的背景被重复绘制。
+     *
+     * @param trackColor
+     */
+    public void setTrackColor(int trackColor) {
+        if (trackPaint.getColor() == trackColor) return;
+        trackPaint.setColor(trackColor);
+        invalidateSelf();
+    }
+
+    /**
+     * 检查内切圆是否不透明，只在设置封面时执行一次。
+     * 在主线程上逐个读取像素的代价与封面面积成正比，这里只采样圆的边缘、半径一半处的圆环和圆心：
+     * 圆形裁剪、圆角和透明底色的封面都会在这些位置露出透明像素
+     */
+    private static boolean isOpaqueCircle(Bitmap bitmap) {
+        return isOpaqueCircle(bitmap, 0, 0, Math.min(bitmap.getWidth(), bitmap.getHeight()));
+    }
+
+    private static boolean isOpaqueCircle(Bitmap bitmap, int left, int top, int size) {
+        if (!bitmap.hasAlpha()) return true;
+        if (size <= 0) return false;
+        // 与绘制时一致，只检查左上角的正方形区域；边缘一个像素由抗锯齿决定，不参与判断
+        float center = size / 2f;
+        int centerPixel = Math.min(size - 1, (int) center);
+        if (Color.alpha(bitmap.getPixel(left + centerPixel, top + centerPixel)) != 0xFF) {
+            return false;
+        }
+        float radius = size / 2f - 1;
+        return isOpaqueRing(bitmap, left, top, center, radius)
+                && isOpaqueRing(bitmap, left, top, center, radius / 2f);
+    }
+
+    /**
+     * 沿圆环每隔大约一个像素采样一次
+     */
+    private static boolean isOpaqueRing(Bitmap bitmap, int left, int top, float center, float radius) {
+        if (radius < 1) return true;
+        int samples = (int) Math.ceil(2 * Math.PI * radius);
+        for (int i = 0; i < samples; i++) {
+            double angle = 2 * Math.PI * i / samples;
+            int x = (int) (center + radius * Math.cos(angle));
+            int y = (int) (center + radius * Math.sin(angle));
+            if (Color.alpha(bitmap.getPixel(left + x, top + y)) != 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 是否正在淡入新封面
+     */
+    public boolean isCrossfading() {
+        return fading;
+    }
+
+    /**
+     * set progress, can be called from any thread
+     * 设置进度，可以在任意线程调用，同一帧内的多次更新只会触发一次重绘
      *
      * @param progress 0-100
      */
     public void setProgress(float progress) {
         if (progress < 0 || progress > 100)
             return;
-        progress = progress * 360 / 100f;
-        this.progress = progress;
-        invalidateSelf();
+        progressBits.set(Float.floatToIntBits(progress * 360 / 100f));
+        contentVersion.incrementAndGet();
+        scheduleInvalidate();
+    }
+
+    /**
+     * 请求重绘：主线程直接 invalidate；其它线程只在没有待处理的重绘时 post 一次，
+     * 在下一帧绘制时统一读取最新的进度
+     */
+    private void scheduleInvalidate() {
+        if (renderingPaused) return;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            invalidateSelf();
+            return;
+        }
+        if (!invalidatePending.compareAndSet(false, true)) return;
+        Callback callback = getCallback();
+        if (callback instanceof View && ((View) callback).isAttachedToWindow()) {
+            ((View) callback).postOnAnimation(invalidateRunnable);
+        } else {
+            rotateHandler.sendEmptyMessage(MSG_INVALIDATE);
+        }
     }
 
     /**
@@ -123,9 +578,50 @@ public class RotatingProgressDrawable extends Drawable {
     public void setProgressWidthPercent(int percent) {
         this.progressPercent = percent;
         if (mWidth > 0) {
-            float progressWidth = mWidth * percent / 100f;
-            progressPaint.setStrokeWidth(progressWidth);
+            updateStrokeWidth();
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * set buffered progress, drawn behind the played part
+     * 设置缓冲进度，用于显示网络流媒体已经缓冲的位置
+     *
+     * @param bufferedProgress 0-100
+     */
+    public void setBufferedProgress(float bufferedProgress) {
+        if (bufferedProgress < 0 || bufferedProgress > 100)
+            return;
+        bufferedBits.set(Float.floatToIntBits(bufferedProgress * 360 / 100f));
+        contentVersion.incrementAndGet();
+        scheduleInvalidate();
+    }
+
+    /**
+     * 设置缓冲进度条的颜色，为 0 时使用半透明的进度条颜色
+     *
+     * @param bufferedColor
+     */
+    public void setBufferedColor(int bufferedColor) {
+        this.bufferedColor = bufferedColor;
+        updateBufferedColor();
+        invalidateSelf();
+    }
+
+    /**
+     * 设置已播放部分的渐变色，传入 null 时恢复为纯色。
+     * 渐变只在尺寸或颜色变化时创建一次，绘制时不会再分配对象；颜色相同时不做任何事。
+     *
+     * @param colors 渐变色，沿顺时针方向从顶部开始
+     */
+    public void setProgressGradient(int[] colors) {
+        if (colors != null && colors.length < 2) {
+            colors = null;
         }
+        if (Arrays.equals(gradientColors, colors)) return;
+        this.gradientColors = colors == null ? null : colors.clone();
+        gradientWidth = 0;
+        updateProgressShader();
         invalidateSelf();
     }
 
@@ -137,19 +633,70 @@ public class RotatingProgressDrawable extends Drawable {
     public void setProgressColor(int progressColor) {
         this.progressColor = progressColor;
         progressPaint.setColor(progressColor);
+        updateBufferedColor();
         invalidateSelf();
     }
 
     /**
-     * 是否开始旋转
+     * 是否开始旋转，可以在任意线程调用，非主线程的多次调用会合并为一次，以最后一次为准
      *
      * @param rotate
      */
     public void rotate(boolean rotate) {
-        rotateHandler.removeMessages(0);
-        if (rotate) {
-            rotateHandler.sendEmptyMessage(0);
+        rotateRequest.set(rotate);
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            applyRotate(rotate);
+            return;
+        }
+        if (rotateRequestPending.compareAndSet(false, true)) {
+            rotateHandler.sendEmptyMessage(MSG_APPLY_ROTATE);
+        }
+    }
+
+    private void applyRotate(boolean rotate) {
+        boolean wasRotating = rotating;
+        rotating = rotate;
+        rotateHandler.removeMessages(MSG_ROTATE);
+        if (rotate && !wasRotating) {
+            rotationTicker.start();
+        }
+        if (rotate && !renderingPaused) {
+            rotateHandler.sendEmptyMessage(MSG_ROTATE);
+        }
+    }
+
+    /**
+     * 不可见时暂停旋转和进度的重绘，重新可见时按照暂停的时长补上旋转角度，保持旋转相位连续。
+     * 页面进入后台时窗口不可见，同样会暂停。
+     */
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        boolean changed = super.setVisible(visible, restart);
+        setRenderingPaused(!visible);
+        return changed;
+    }
+
+    private void setRenderingPaused(boolean paused) {
+        if (renderingPaused == paused) return;
+        renderingPaused = paused;
+        if (paused) {
+            rotateHandler.removeMessages(MSG_ROTATE);
+            rotateHandler.removeMessages(MSG_ANIMATED_FRAME);
+            rotateHandler.removeMessages(MSG_INVALIDATE);
+            // 已经 post 到 View 的重绘可能不会执行，恢复可见时会整体重绘
+            invalidatePending.set(false);
+            return;
+        }
+        if (animatedPlayer != null) {
+            rotateHandler.removeMessages(MSG_ANIMATED_FRAME);
+            rotateHandler.sendEmptyMessage(MSG_ANIMATED_FRAME);
+        }
+        if (rotating) {
+            // 计时器按实际经过的时间推进角度，恢复后的第一帧会补上暂停期间的旋转
+            rotateHandler.removeMessages(MSG_ROTATE);
+            rotateHandler.sendEmptyMessage(MSG_ROTATE);
         }
+        invalidateSelf();
     }
 
     /**
@@ -158,12 +705,205 @@ public class RotatingProgressDrawable extends Drawable {
     private void circleBitmap(Bitmap mBitmap) {
         BitmapShader bitmapShader = new BitmapShader(mBitmap, Shader.TileMode.CLAMP,
                 Shader.TileMode.CLAMP);
-        mPaint = new Paint();
-        mPaint.setAntiAlias(true);
         mPaint.setShader(bitmapShader);
+        coverBitmap = mBitmap;
+        coverOpaque = isOpaqueCircle(mBitmap);
         mWidth = Math.min(mBitmap.getWidth(), mBitmap.getHeight());
+        updateStrokeWidth();
+        updateProgressShader();
+        requestBake();
+    }
+
+    /**
+     * 设置封面的绘制方式
+     *
+     * @param renderMode {@link #RENDER_MODE_SHADER} 或 {@link #RENDER_MODE_BAKED}
+     */
+    public void setRenderMode(int renderMode) {
+        if (this.renderMode == renderMode) return;
+        this.renderMode = renderMode;
+        requestBake();
+        invalidateSelf();
+    }
+
+    public int getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * 圆形位图是否已经准备好，之后的绘制不再经过 shader
+     */
+    boolean isBakedCoverReady() {
+        return bakedBitmap != null;
+    }
+
+    /**
+     * 在后台线程裁剪当前封面。动态封面的帧和图集的页都在不断复用，只能使用 shader 绘制
+     */
+    private void requestBake() {
+        bakedBitmap = null;
+        final int generation = ++bakeGeneration;
+        if (renderMode != RENDER_MODE_BAKED || coverBitmap == null || fading
+                || animatedPlayer != null || atlasRegion != null) {
+            return;
+        }
+        final Bitmap source = coverBitmap;
+        Matrix localMatrix = new Matrix();
+        if (mPaint.getShader() != null) {
+            mPaint.getShader().getLocalMatrix(localMatrix);
+        }
+        CircleCoverBaker.bakeAsync(source, mWidth, localMatrix, new CircleCoverBaker.Callback() {
+            @Override
+            public void onCoverBaked(final Bitmap baked) {
+                rotateHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyBakedCover(generation, baked);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 裁剪期间又请求过裁剪（例如更换了封面）时丢弃结果
+     *
+     * @param generation 请求裁剪时的 {@link #getBakeGeneration()}
+     */
+    void applyBakedCover(int generation, Bitmap baked) {
+        if (generation != bakeGeneration || fading || renderMode != RENDER_MODE_BAKED) return;
+        bakedBitmap = baked;
+        invalidateSelf();
+    }
+
+    int getBakeGeneration() {
+        return bakeGeneration;
+    }
+
+    /**
+     * 新按钮使用的绘制方式，默认为 {@link #RENDER_MODE_SHADER}，不占用额外的位图内存
+     */
+    public static int getDefaultRenderMode() {
+        return defaultRenderMode;
+    }
+
+    /**
+     * 修改新按钮默认的绘制方式，例如根据 CoverRenderBenchmark 在目标设备上的结果，
+     * 或者 {@link #recommendRenderMode(Context)} 的建议设置
+     *
+     * @param renderMode {@link #RENDER_MODE_SHADER} 或 {@link #RENDER_MODE_BAKED}，小于 0 时恢复为 shader
+     */
+    public static void setDefaultRenderMode(int renderMode) {
+        defaultRenderMode = renderMode < 0 ? RENDER_MODE_SHADER : renderMode;
+    }
+
+    /**
+     * 按照设备等级给出建议的绘制方式：低内存设备的 GPU 填充率通常较低，预先裁剪的位图更快，
+     * 但每个封面都要多占用一份位图内存，所以只作为建议，不会自动应用
+     */
+    public static int recommendRenderMode(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am != null && (am.isLowRamDevice() || am.getMemoryClass() <= LOW_END_MEMORY_CLASS_MB)) {
+            return RENDER_MODE_BAKED;
+        }
+        return RENDER_MODE_SHADER;
+    }
+
+    /**
+     * 创建用于 {@link #drawSnapshot(Bitmap)} 的位图，边长不超过 {@link #MAX_SNAPSHOT_SIZE}。
+     * 位图应由调用方保存并反复使用，不需要每次导出都重新创建
+     *
+     * @param size   期望的边长
+     * @param config 位图格式，不支持透明的格式下圆形之外的四角为黑色
+     */
+    public static Bitmap createSnapshotBitmap(int size, Bitmap.Config config) {
+        size = Math.max(1, Math.min(size, MAX_SNAPSHOT_SIZE));
+        return Bitmap.createBitmap(size, size, config);
+    }
+
+    /**
+     * 把当前帧（封面、旋转角度和进度条）缩放绘制到 target 中，用于通知栏和桌面小部件。
+     * 只使用 target 左上角的正方形区域，不会创建新的位图。只能在主线程调用
+     *
+     * @param target 可修改的位图，边长不能超过 {@link #MAX_SNAPSHOT_SIZE}
+     * @return 还没有封面时返回 false，target 保持不变
+     */
+    public boolean drawSnapshot(Bitmap target) {
+        if (!target.isMutable()) {
+            throw new IllegalArgumentException("Snapshot bitmap must be mutable");
+        }
+        if (target.getWidth() > MAX_SNAPSHOT_SIZE || target.getHeight() > MAX_SNAPSHOT_SIZE) {
+            throw new IllegalArgumentException("Snapshot bitmap exceeds " + MAX_SNAPSHOT_SIZE + "px");
+        }
+        if (mWidth <= 0) return false;
+        if (snapshotCanvas == null) {
+            snapshotCanvas = new Canvas();
+        }
+        Canvas canvas = snapshotCanvas;
+        canvas.setBitmap(target);
+        target.eraseColor(Color.TRANSPARENT);
+        float scale = Math.min(target.getWidth(), target.getHeight()) / (float) mWidth;
+        // 缩小绘制时对封面进行过滤，避免最近邻采样产生锯齿
+        boolean filter = mPaint.isFilterBitmap();
+        mPaint.setFilterBitmap(true);
+        fadePaint.setFilterBitmap(true);
+        canvas.save();
+        canvas.scale(scale, scale);
+        // 不经过 setBounds，避免让按钮重绘并改变画面版本；还没有加入按钮时 bounds 可能为空，直接绕封面中心旋转
+        drawFrame(canvas, mWidth / 2f, mWidth / 2f);
+        canvas.restore();
+        mPaint.setFilterBitmap(filter);
+        fadePaint.setFilterBitmap(filter);
+        // 不持有调用方的位图
+        canvas.setBitmap(null);
+        return true;
+    }
+
+    /**
+     * 画面内容的版本，与上一次导出快照时相同说明画面没有变化
+     */
+    int getContentVersion() {
+        return contentVersion.get();
+    }
+
+    @Override
+    public void invalidateSelf() {
+        contentVersion.incrementAndGet();
+        super.invalidateSelf();
+    }
+
+    private void updateStrokeWidth() {
         float progressWidth = mWidth * progressPercent / 100f;
         progressPaint.setStrokeWidth(progressWidth);
+        bufferedPaint.setStrokeWidth(progressWidth);
+        trackPaint.setStrokeWidth(progressWidth);
+    }
+
+    private void updateBufferedColor() {
+        if (bufferedColor != 0) {
+            bufferedPaint.setColor(bufferedColor);
+        } else {
+            bufferedPaint.setColor(progressColor);
+            bufferedPaint.setAlpha(Color.alpha(progressColor) * BUFFERED_DEFAULT_ALPHA / 0xFF);
+        }
+    }
+
+    /**
+     * 按照当前尺寸创建渐变，尺寸和颜色不变时直接复用
+     */
+    private void updateProgressShader() {
+        if (gradientColors == null) {
+            progressPaint.setShader(null);
+            return;
+        }
+        if (mWidth <= 0 || gradientWidth == mWidth) return;
+        gradientWidth = mWidth;
+        float center = mWidth / 2f;
+        SweepGradient gradient = new SweepGradient(center, center, gradientColors, null);
+        // SweepGradient 从三点钟方向开始，旋转到与进度条一致的十二点钟方向
+        gradientMatrix.setRotate(-90, center, center);
+        gradient.setLocalMatrix(gradientMatrix);
+        progressPaint.setShader(gradient);
     }
 
     private void circleBitmapFromDrawable(Drawable drawable) {
@@ -182,6 +922,41 @@ public class RotatingProgressDrawable extends Drawable {
         circleBitmap(mBitmap);
     }
 
+    /**
+     * 已经光栅化的封面位图，动态封面和图集中的封面返回 null
+     */
+    Bitmap getCoverBitmap() {
+        return animatedPlayer != null || atlasRegion != null ? null : coverBitmap;
+    }
+
+    /**
+     * 把封面光栅化为边长不超过 maxSize 的正方形位图，居中裁剪，可以直接用于圆形绘制
+     *
+     * @param drawable 原始封面
+     * @param maxSize  显示尺寸
+     */
+    static Bitmap rasterizeCover(Drawable drawable, int maxSize) {
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+        if (width <= 0 || height <= 0) {
+            width = height = COLORDRAWABLE_DIMENSION;
+        }
+        int size = Math.max(1, Math.min(maxSize, Math.min(width, height)));
+        float scale = size / (float) Math.min(width, height);
+        int scaledWidth = Math.round(width * scale);
+        int scaledHeight = Math.round(height * scale);
+        int left = (size - scaledWidth) / 2;
+        int top = (size - scaledHeight) / 2;
+
+        Bitmap bitmap = Bitmap.createBitmap(size, size, BITMAP_CONFIG);
+        Canvas canvas = new Canvas(bitmap);
+        Rect oldBounds = drawable.copyBounds();
+        drawable.setBounds(left, top, left + scaledWidth, top + scaledHeight);
+        drawable.draw(canvas);
+        drawable.setBounds(oldBounds);
+        return bitmap;
+    }
+
     @Override
     public int getIntrinsicWidth() {
         return mWidth;
@@ -194,19 +969,52 @@ public class RotatingProgressDrawable extends Drawable {
 
     @Override
     public void setAlpha(int alpha) {
+        mAlpha = alpha;
         mPaint.setAlpha(alpha);
+        bakedPaint.setAlpha(alpha);
     }
 
     @Override
     public void setColorFilter(ColorFilter cf) {
         mPaint.setColorFilter(cf);
+        fadePaint.setColorFilter(cf);
+        bakedPaint.setColorFilter(cf);
     }
 
+    /**
+     * 圆形之外的四个角总是透明的，所以即使封面不透明也不会返回 {@link PixelFormat#OPAQUE}；
+     * 没有封面也没有进度条时返回 {@link PixelFormat#TRANSPARENT}。
+     * 不透明的圆形区域通过 {@link #getOutline(Outline)} 提供
+     */
     @Override
     public int getOpacity() {
+        if (mAlpha == 0 || mWidth <= 0) return PixelFormat.TRANSPARENT;
         return PixelFormat.TRANSLUCENT;
     }
 
+    /**
+     * 封面所在的圆形，封面不透明时 alpha 为 1
+     */
+    @Override
+    public void getOutline(Outline outline) {
+        Rect bounds = getBounds();
+        float radius = mWidth / 2f - mWidth * progressPercent / 100f;
+        if (radius <= 0) {
+            outline.setEmpty();
+            return;
+        }
+        outline.setOval(Math.round(bounds.centerX() - radius), Math.round(bounds.centerY() - radius),
+                Math.round(bounds.centerX() + radius), Math.round(bounds.centerY() + radius));
+        outline.setAlpha(isCoverOpaque() ? 1f : 0f);
+    }
+
+    /**
+     * 淡入结束后交还不再绘制的旧封面
+     */
+    public interface OnCoverReleasedListener {
+        void onCoverReleased(Bitmap bitmap);
+    }
+
     private class RotateHandler extends Handler {
 
         RotateHandler(Looper looper) {
@@ -215,13 +1023,27 @@ public class RotatingProgressDrawable extends Drawable {
 
         @Override
         public void handleMessage(Message msg) {
-            if (msg.what == 0) {
-                mRotation = mRotation + 1;
-                if (mRotation > 360) {
-                    mRotation = 0;
+            if (msg.what == MSG_ROTATE) {
+                long delay = rotationTicker.tick();
+                mRotation = rotationTicker.getRotation();
+                invalidateSelf();
+                rotateHandler.sendEmptyMessageDelayed(MSG_ROTATE, delay);
+            } else if (msg.what == MSG_APPLY_ROTATE) {
+                rotateRequestPending.set(false);
+                applyRotate(rotateRequest.get());
+            } else if (msg.what == MSG_INVALIDATE) {
+                invalidateRunnable.run();
+            } else if (msg.what == MSG_RELEASE_COVER) {
+                dispatchCoverReleased();
+            } else if (msg.what == MSG_ANIMATED_FRAME && animatedPlayer != null && !renderingPaused) {
+                long now = SystemClock.uptimeMillis();
+                BitmapShader frame = animatedPlayer.advance(now);
+                if (frame != null) {
+                    // 只切换 shader，不重新创建画笔和位图
+                    mPaint.setShader(frame);
+                    invalidateSelf();
                 }
-                setRotation(mRotation);
-                rotateHandler.sendEmptyMessageDelayed(0, ROTATION_DEFAULT_SPEED);
+                rotateHandler.sendEmptyMessageDelayed(MSG_ANIMATED_FRAME, animatedPlayer.getDelay(now));
             }
             super.handleMessage(msg);
         }
@@ -0,0 +1,71 @@
+package com.cpacm;
+
+/**
+ * <p>
+ * 封面旋转的计时器，与 Android 无关，方便单元测试。
+ * 旋转角度由实际经过的时间计算，帧率只决定刷新频率：主线程卡顿或帧率降低时直接跳过落下的帧，
+ * 下一帧仍然对齐到帧间隔上，角速度保持不变。
+ * </p>
+ *
+ * @author cpacm
+ */
+final class RotationTicker {
+
+    /**
+     * 默认角速度，与之前 25ms 旋转 1 度一致
+     */
+    static final float DEFAULT_DEGREES_PER_SECOND = 40f;
+
+    private final FrameClock clock;
+    private FrameRatePolicy policy;
+    private float degreesPerSecond = DEFAULT_DEGREES_PER_SECOND;
+    private float rotation;
+    private long anchorTime;
+    private long lastFrameTime;
+
+    RotationTicker(FrameClock clock, FrameRatePolicy policy) {
+        this.clock = clock;
+        this.policy = policy;
+    }
+
+    void setPolicy(FrameRatePolicy policy) {
+        this.policy = policy;
+    }
+
+    FrameRatePolicy getPolicy() {
+        return policy;
+    }
+
+    float getRotation() {
+        return rotation;
+    }
+
+    void setRotation(float rotation) {
+        this.rotation = rotation;
+    }
+
+    /**
+     * 开始旋转，从当前时间开始计算
+     */
+    void start() {
+        lastFrameTime = clock.uptimeMillis();
+        anchorTime = lastFrameTime;
+    }
+
+    /**
+     * 推进一帧，按照距离上一帧的实际时间更新角度
+     *
+     * @return 距离下一帧的延迟（毫秒）
+     */
+    long tick() {
+        long now = clock.uptimeMillis();
+        long elapsed = now - lastFrameTime;
+        lastFrameTime = now;
+        if (elapsed > 0) {
+            rotation = (rotation + elapsed * degreesPerSecond / 1000f) % 360f;
+        }
+        long interval = Math.max(1, policy.getFrameInterval());
+        // 对齐到帧间隔上，落后时跳过错过的帧而不是连续补帧
+        return interval - (now - anchorTime) % interval;
+    }
+}
@@ -0,0 +1,61 @@
+package com.cpacm;
+
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * <p>
+ * 轻量的虚拟菜单项，没有对应的 View，由 {@link FloatingMusicMenu} 负责布局、点击检测和绘制，
+ * 并通过无障碍服务暴露给读屏软件。适用于按钮较多的菜单，可以大幅减少 View 的数量和绘制调用。
+ * </p>
+ *
+ * @author cpacm
+ */
+public class VirtualMenuItem {
+
+    /**
+     * 虚拟菜单项的点击回调
+     */
+    public interface OnItemClickListener {
+        void onItemClick(FloatingMusicMenu menu, VirtualMenuItem item);
+    }
+
+    private final Drawable icon;
+    private final int tint;
+    private final CharSequence contentDescription;
+    private final OnItemClickListener listener;
+
+    // 以下由 FloatingMusicMenu 在布局时计算
+    final Rect bounds = new Rect();
+    float collapsedTranslationX;
+    float collapsedTranslationY;
+
+    /**
+     * @param icon               图标，会调用 {@link Drawable#mutate()} 以便单独设置透明度
+     * @param tint               圆形背景颜色
+     * @param contentDescription 无障碍描述
+     * @param listener           点击回调
+     */
+    public VirtualMenuItem(Drawable icon, int tint, CharSequence contentDescription, OnItemClickListener listener) {
+        this.icon = icon == null ? null : icon.mutate();
+        this.tint = tint;
+        this.contentDescription = contentDescription;
+        this.listener = listener;
+    }
+
+    public Drawable getIcon() {
+        return icon;
+    }
+
+    public int getTint() {
+        return tint;
+    }
+
+    public CharSequence getContentDescription() {
+        return contentDescription;
+    }
+
+    public OnItemClickListener getOnItemClickListener() {
+        return listener;
+    }
+}
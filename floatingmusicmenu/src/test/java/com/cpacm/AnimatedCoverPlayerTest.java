@@ -0,0 +1,76 @@
+package com.cpacm;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * 被替换下来的帧在新的一帧绘制完成之前不会被后台线程覆盖
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class AnimatedCoverPlayerTest {
+
+    private static final long FRAME_DURATION = 40;
+
+    @Test
+    public void replacedFrameIsDecodedOnlyAfterDraw() throws InterruptedException {
+        CountingCover cover = new CountingCover();
+        AnimatedCoverPlayer player = new AnimatedCoverPlayer(cover, 32);
+        player.start();
+        awaitFrames(cover, AnimatedCoverPlayer.BUFFER_SIZE);
+
+        assertNotNull(player.advance(1000));
+        player.onFrameDrawn();
+        assertNotNull(player.advance(1000 + FRAME_DURATION));
+        // 第一帧已经被替换，但新的一帧还没有绘制，第一帧的位图仍然可能被读取
+        Thread.sleep(100);
+        assertEquals(AnimatedCoverPlayer.BUFFER_SIZE, cover.frames.get());
+
+        player.onFrameDrawn();
+        awaitFrames(cover, AnimatedCoverPlayer.BUFFER_SIZE + 1);
+        assertEquals(AnimatedCoverPlayer.BUFFER_SIZE + 1, cover.frames.get());
+        player.release();
+    }
+
+    private static void awaitFrames(CountingCover cover, int frames) throws InterruptedException {
+        for (int i = 0; i < 100 && cover.frames.get() < frames; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class CountingCover implements AnimatedCover {
+        final AtomicInteger frames = new AtomicInteger();
+
+        @Override
+        public int getWidth() {
+            return 32;
+        }
+
+        @Override
+        public int getHeight() {
+            return 32;
+        }
+
+        @Override
+        public long drawNextFrame(Canvas canvas) {
+            canvas.drawColor(frames.incrementAndGet() % 2 == 0 ? Color.RED : Color.BLUE);
+            return FRAME_DURATION;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 淡入切换封面时旧封面的回调顺序，以及新封面有透明部分时旧封面同时淡出
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class CoverCrossfadeTest {
+
+    private static final int SIZE = 96;
+
+    @Test
+    public void releasesAreQueuedAndDispatchedInOrder() {
+        Bitmap first = RenderHarness.createTestCover(SIZE);
+        RotatingProgressDrawable drawable = createDrawable(first);
+        final List<Bitmap> released = new ArrayList<>();
+        RotatingProgressDrawable.OnCoverReleasedListener listener = new RotatingProgressDrawable.OnCoverReleasedListener() {
+            @Override
+            public void onCoverReleased(Bitmap bitmap) {
+                released.add(bitmap);
+            }
+        };
+        Bitmap second = RenderHarness.createTestCover(SIZE);
+        Bitmap third = RenderHarness.createTestCover(SIZE);
+        drawable.crossfadeTo(second, 0, listener);
+        drawable.crossfadeTo(third, 0, listener);
+        // 不会在切换过程中同步回调
+        assertTrue(released.isEmpty());
+
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(2, released.size());
+        assertSame(first, released.get(0));
+        assertSame(second, released.get(1));
+    }
+
+    @Test
+    public void outgoingCoverFadesUnderTransparentCover() {
+        RotatingProgressDrawable drawable = createDrawable(RenderHarness.createTestCover(SIZE));
+        Bitmap transparent = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap target = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        drawable.setBounds(0, 0, SIZE, SIZE);
+
+        drawable.crossfadeTo(transparent, 1000, null);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(500));
+        drawable.draw(canvas);
+        // 旧封面在中途只剩一半的透明度，而不是保持不透明
+        int alpha = Color.alpha(target.getPixel(SIZE / 2, SIZE / 2));
+        assertTrue("alpha " + alpha, alpha > 96 && alpha < 160);
+    }
+
+    private static RotatingProgressDrawable createDrawable(Bitmap cover) {
+        RotatingProgressDrawable drawable = RotatingProgressDrawable.fromRasterizedCover(cover);
+        drawable.setProgressColor(Color.BLACK);
+        return drawable;
+    }
+}
@@ -0,0 +1,78 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.os.Looper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 读取在后台线程完成，淘汰按照内存中记录的访问顺序进行
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class CoverDiskCacheTest {
+
+    private static final int COVER_SIZE = 32;
+    // 文件头加像素
+    private static final long FILE_SIZE = 16 + COVER_SIZE * COVER_SIZE * 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void getCallsBackOnMainThread() throws Exception {
+        CoverDiskCache cache = new CoverDiskCache(folder.newFolder(), FILE_SIZE * 4);
+        cache.put("a", RenderHarness.createTestCover(COVER_SIZE));
+        final Bitmap[] result = new Bitmap[1];
+        final boolean[] called = new boolean[2];
+        cache.get("a", new CoverDiskCache.Callback() {
+            @Override
+            public void onCoverLoaded(Bitmap bitmap) {
+                result[0] = bitmap;
+                called[0] = Looper.myLooper() == Looper.getMainLooper();
+            }
+        });
+        cache.get("missing", new CoverDiskCache.Callback() {
+            @Override
+            public void onCoverLoaded(Bitmap bitmap) {
+                called[1] = bitmap == null;
+            }
+        });
+        CoverDiskCache.awaitIdle();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertNotNull(result[0]);
+        assertEquals(COVER_SIZE, result[0].getWidth());
+        assertTrue(called[0]);
+        assertTrue(called[1]);
+    }
+
+    @Test
+    public void evictsLeastRecentlyRead() throws Exception {
+        CoverDiskCache cache = new CoverDiskCache(folder.newFolder(), FILE_SIZE * 2);
+        cache.put("a", RenderHarness.createTestCover(COVER_SIZE));
+        cache.put("b", RenderHarness.createTestCover(COVER_SIZE));
+        CoverDiskCache.awaitIdle();
+        // 读取 a 之后 b 成为最久未使用的
+        assertNotNull(cache.get("a"));
+        cache.put("c", RenderHarness.createTestCover(COVER_SIZE));
+        CoverDiskCache.awaitIdle();
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.cpacm;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Looper;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 预先裁剪的圆形封面与 shader 绘制的结果一致
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class CoverRenderModeTest {
+
+    private static final int SIZE = 96;
+
+    @Test
+    public void lowRamDeviceKeepsShaderUntilOptedIn() {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                com.google.android.material.R.style.Theme_MaterialComponents_Light);
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        shadowOf(am).setIsLowRamDevice(true);
+
+        assertEquals(RotatingProgressDrawable.RENDER_MODE_SHADER, new FloatingMusicButton(context).getCoverRenderMode());
+        assertEquals(RotatingProgressDrawable.RENDER_MODE_BAKED, RotatingProgressDrawable.recommendRenderMode(context));
+    }
+
+    @Test
+    public void bakedCoverMatchesShader() throws InterruptedException {
+        RotatingProgressDrawable drawable = new RotatingProgressDrawable(
+                ApplicationProvider.getApplicationContext().getResources(), RenderHarness.createTestCover(SIZE));
+        drawable.setBounds(0, 0, SIZE, SIZE);
+        drawable.setProgress(30f);
+        drawable.setRotation(30f);
+        Bitmap shader = draw(drawable);
+
+        drawable.setRenderMode(RotatingProgressDrawable.RENDER_MODE_BAKED);
+        assertFalse(drawable.isBakedCoverReady());
+        // 裁剪在后台线程完成后再回到主线程应用
+        for (int i = 0; i < 100 && !drawable.isBakedCoverReady(); i++) {
+            Thread.sleep(10);
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(10));
+        }
+        assertTrue(drawable.isBakedCoverReady());
+        Bitmap baked = draw(drawable);
+
+        int different = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if (maxChannelDelta(shader.getPixel(x, y), baked.getPixel(x, y)) > 24) {
+                    different++;
+                }
+            }
+        }
+        // 只允许圆形边缘和色块交界处因为二次过滤产生的差异
+        assertTrue("different pixels " + different, different < SIZE * SIZE / 20);
+    }
+
+    @Test
+    public void changingCoverDiscardsBakedCover() throws InterruptedException {
+        RotatingProgressDrawable drawable = new RotatingProgressDrawable(
+                ApplicationProvider.getApplicationContext().getResources(), RenderHarness.createTestCover(SIZE));
+        drawable.setRenderMode(RotatingProgressDrawable.RENDER_MODE_BAKED);
+        Bitmap stale = drawable.getCoverBitmap();
+        int generation = drawable.getBakeGeneration();
+        drawable.crossfadeTo(RenderHarness.createTestCover(SIZE), 0, null);
+        drawable.applyBakedCover(generation, CircleCoverBaker.bake(stale, SIZE, null));
+        assertFalse(drawable.isBakedCoverReady());
+    }
+
+    @Test
+    public void reusedBitmapDoesNotAcceptStaleBake() {
+        Bitmap first = RenderHarness.createTestCover(SIZE);
+        Bitmap second = RenderHarness.createTestCover(SIZE);
+        RotatingProgressDrawable drawable = RotatingProgressDrawable.fromRasterizedCover(first);
+        drawable.setRenderMode(RotatingProgressDrawable.RENDER_MODE_BAKED);
+        int generation = drawable.getBakeGeneration();
+        // 旧封面交还后被复用解码为新的封面，位图对象相同但内容已经不同
+        drawable.crossfadeTo(second, 0, null);
+        drawable.crossfadeTo(first, 0, null);
+        drawable.applyBakedCover(generation, CircleCoverBaker.bake(first, SIZE, null));
+        assertFalse(drawable.isBakedCoverReady());
+    }
+
+    private static Bitmap draw(RotatingProgressDrawable drawable) {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    private static int maxChannelDelta(int a, int b) {
+        int delta = Math.abs(Color.alpha(a) - Color.alpha(b));
+        delta = Math.max(delta, Math.abs(Color.red(a) - Color.red(b)));
+        delta = Math.max(delta, Math.abs(Color.green(a) - Color.green(b)));
+        return Math.max(delta, Math.abs(Color.blue(a) - Color.blue(b)));
+    }
+}
@@ -0,0 +1,86 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 各级位图都计入缓存大小，总大小不超过上限
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class CoverStoreTest {
+
+    private static final int COVER_SIZE = 128;
+    private static final int LEVEL0_BYTES = COVER_SIZE * COVER_SIZE * 4;
+
+    @Test
+    public void mipLevelsAreCounted() {
+        CoverStore store = new CoverStore(LEVEL0_BYTES * 4);
+        store.getCover("a", RenderHarness.createTestCover(COVER_SIZE), COVER_SIZE);
+        assertEquals(LEVEL0_BYTES, store.size());
+
+        // 128 -> 64 -> 32 -> 16
+        store.getCover("a", 16);
+        assertEquals(LEVEL0_BYTES + LEVEL0_BYTES / 4 + LEVEL0_BYTES / 16 + LEVEL0_BYTES / 64, store.size());
+    }
+
+    @Test
+    public void levelsRespectMaxSize() {
+        CoverStore store = new CoverStore(LEVEL0_BYTES * 3);
+        for (int i = 0; i < 10; i++) {
+            String key = "cover" + i;
+            store.getCover(key, RenderHarness.createTestCover(COVER_SIZE), COVER_SIZE);
+            store.getCover(key, 64);
+            store.getCover(key, 32);
+            store.getCover(key, 16);
+            assertTrue(store.size() <= store.maxSize());
+        }
+        // 最早的封面已经被淘汰
+        assertNull(store.getCover("cover0", COVER_SIZE));
+    }
+
+    @Test
+    public void coverLargerThanMaxSizeStaysCached() {
+        CoverStore store = new CoverStore(LEVEL0_BYTES);
+        // 原图是上限的 4 倍，缩小后才放入
+        Bitmap cover = store.getCover("a", RenderHarness.createTestCover(COVER_SIZE * 2), COVER_SIZE * 2);
+        assertTrue(cover.getWidth() <= COVER_SIZE);
+        assertTrue(store.size() <= store.maxSize());
+        assertNotNull(store.getCover("a", COVER_SIZE));
+
+        Drawable drawable = new BitmapDrawable(null, RenderHarness.createTestCover(COVER_SIZE * 4));
+        store.getCover("b", drawable, COVER_SIZE * 4);
+        assertNotNull(store.getCover("b", COVER_SIZE));
+        assertTrue(store.size() <= store.maxSize());
+    }
+
+    @Test
+    public void drawableIsRasterizedAtRequestedSize() {
+        CoverStore store = new CoverStore();
+        Drawable drawable = new BitmapDrawable(null, RenderHarness.createTestCover(COVER_SIZE * 4));
+        assertEquals(COVER_SIZE / 2, store.getCover("a", drawable, COVER_SIZE / 2).getWidth());
+        // 之后请求更大的尺寸时重新光栅化
+        assertEquals(COVER_SIZE, store.getCover("a", drawable, COVER_SIZE).getWidth());
+    }
+
+    @Test
+    public void squareSourceIsNotCopied() {
+        CoverStore store = new CoverStore();
+        Bitmap source = RenderHarness.createTestCover(COVER_SIZE);
+        assertSame(source, store.getCover("a", source, COVER_SIZE));
+    }
+}
@@ -0,0 +1,106 @@
+package com.cpacm;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 拖动菜单只修改平移，松手后贴靠边缘并切换展开方向
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class DragSnapTest {
+
+    private FrameLayout parent;
+    private FloatingMusicMenu menu;
+    private View root;
+
+    @Before
+    public void setUp() {
+        menu = FloatingMusicMenuRenderTest.createMenu(FloatingMusicMenu.FLOATING_DIRECTION_UP);
+        menu.setDraggable(true);
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        parent = new FrameLayout(activity);
+        parent.addView(menu, new FrameLayout.LayoutParams(FrameLayout.LayoutParams.WRAP_CONTENT,
+                FrameLayout.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM | Gravity.END));
+        activity.setContentView(parent);
+        shadowOf(Looper.getMainLooper()).idle();
+        root = menu.getChildAt(menu.getChildCount() - 1);
+    }
+
+    @Test
+    public void dragToLeftEdgeSnapsAndExpandsRight() {
+        float downX = (root.getLeft() + root.getRight()) / 2f;
+        float downY = (root.getTop() + root.getBottom()) / 2f;
+        float slop = ViewConfiguration.get(menu.getContext()).getScaledTouchSlop() + 1;
+        // 把根按钮的中心拖到父布局左侧的中间
+        float dx = 20 - (menu.getLeft() + downX);
+        float dy = parent.getHeight() / 2f - (menu.getTop() + downY);
+
+        touch(MotionEvent.ACTION_DOWN, downX, downY);
+        touch(MotionEvent.ACTION_MOVE, downX + slop, downY);
+        touch(MotionEvent.ACTION_MOVE, downX + slop + dx, downY + dy);
+        assertFalse(menu.isLayoutRequested());
+        assertFalse(parent.isLayoutRequested());
+        assertTrue(menu.getTranslationX() < 0);
+
+        float rootScreenX = menu.getLeft() + menu.getTranslationX() + root.getLeft();
+        float rootScreenY = menu.getTop() + menu.getTranslationY() + root.getTop();
+        touch(MotionEvent.ACTION_UP, downX + slop + dx, downY + dy);
+
+        assertEquals(FloatingMusicMenu.FLOATING_DIRECTION_RIGHT, menu.getFloatingDirection());
+        // 使用预先计算的布局切换方向，不需要重新测量
+        assertFalse(menu.isLayoutRequested());
+        assertTrue(menu.getChildAt(0).getLeft() > root.getLeft());
+        // 切换方向前后根按钮在屏幕上的位置不变
+        assertEquals(rootScreenX, menu.getLeft() + menu.getTranslationX() + root.getLeft(), 1f);
+        assertEquals(rootScreenY, menu.getTop() + menu.getTranslationY() + root.getTop(), 1f);
+        // 拖动不会触发根按钮的点击
+        assertFalse(menu.isExpanded());
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(500));
+        float margin = menu.dp2px(16);
+        assertEquals(margin, menu.getLeft() + menu.getTranslationX() + root.getLeft(), 1f);
+    }
+
+    @Test
+    public void tapWithoutMovingStillToggles() {
+        float x = (root.getLeft() + root.getRight()) / 2f;
+        float y = (root.getTop() + root.getBottom()) / 2f;
+        touch(MotionEvent.ACTION_DOWN, x, y);
+        touch(MotionEvent.ACTION_UP, x, y);
+        // 点击通过 post 执行
+        shadowOf(Looper.getMainLooper()).idle();
+        assertTrue(menu.isExpanded());
+        assertEquals(0f, menu.getTranslationX(), 0f);
+        assertEquals(0f, menu.getTranslationY(), 0f);
+    }
+
+    private void touch(int action, float x, float y) {
+        long now = SystemClock.uptimeMillis();
+        MotionEvent event = MotionEvent.obtain(now, now, action, x, y, 0);
+        menu.dispatchTouchEvent(event);
+        event.recycle();
+    }
+}
@@ -0,0 +1,88 @@
+package com.cpacm;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.os.Looper;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.android.material.floatingactionbutton.FloatingActionButton;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 在四个展开方向上渲染收缩和展开状态的 {@link FloatingMusicMenu} 并与基准图片比较
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class FloatingMusicMenuRenderTest {
+
+    private static final int[] DIRECTIONS = {
+            FloatingMusicMenu.FLOATING_DIRECTION_UP,
+            FloatingMusicMenu.FLOATING_DIRECTION_LEFT,
+            FloatingMusicMenu.FLOATING_DIRECTION_DOWN,
+            FloatingMusicMenu.FLOATING_DIRECTION_RIGHT
+    };
+    private static final int MAX_SIZE = 1024;
+
+    private static final RenderHarness harness = new RenderHarness("menu");
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        harness.writeTimingReport();
+    }
+
+    @Test
+    public void rendersCollapsedMenus() throws IOException {
+        for (int direction : DIRECTIONS) {
+            FloatingMusicMenu menu = createMenu(direction);
+            String name = "direction" + direction + "_collapsed";
+            harness.assertMatchesGolden(name, harness.render(name, menu, MAX_SIZE, MAX_SIZE));
+        }
+        harness.assertGoldensPresent();
+    }
+
+    @Test
+    public void rendersExpandedMenus() throws IOException {
+        for (int direction : DIRECTIONS) {
+            FloatingMusicMenu menu = createMenu(direction);
+            harness.render("warmup", menu, MAX_SIZE, MAX_SIZE);
+            menu.expand();
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1000));
+            String name = "direction" + direction + "_expanded";
+            harness.assertMatchesGolden(name, harness.render(name, menu, MAX_SIZE, MAX_SIZE));
+        }
+        harness.assertGoldensPresent();
+    }
+
+    static FloatingMusicMenu createMenu(int direction) {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                com.google.android.material.R.style.Theme_MaterialComponents_Light);
+        FloatingMusicMenu menu = new FloatingMusicMenu(context);
+        menu.setFloatingDirection(direction);
+        // 代码创建的菜单需要手动加入根按钮
+        menu.onFinishInflate();
+        menu.setMusicCover(RenderHarness.createTestCover(96));
+        menu.setProgress(40f);
+        for (int i = 0; i < 2; i++) {
+            FloatingActionButton button = new FloatingActionButton(context);
+            button.setSize(FloatingActionButton.SIZE_MINI);
+            button.setBackgroundTintList(ColorStateList.valueOf(Color.DKGRAY));
+            menu.addButton(button);
+        }
+        return menu;
+    }
+}
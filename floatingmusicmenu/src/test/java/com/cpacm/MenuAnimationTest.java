@@ -0,0 +1,74 @@
+package com.cpacm;
+
+import android.os.Looper;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 展开/收缩动画被打断时从当前位置继续
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class MenuAnimationTest {
+
+    @Test
+    public void reversingContinuesFromCurrentPosition() {
+        FloatingMusicMenu menu = layout(FloatingMusicMenuRenderTest.createMenu(FloatingMusicMenu.FLOATING_DIRECTION_UP));
+        View child = menu.getChildAt(0);
+        float collapsed = child.getTranslationY();
+        assertTrue(collapsed != 0f);
+
+        menu.expand();
+        idle(100);
+        float midway = child.getTranslationY();
+        assertTrue(Math.abs(midway) < Math.abs(collapsed));
+
+        menu.collapse();
+        idle(16);
+        // 反向后只移动了一帧的距离，不会跳回展开的终点再收缩
+        float reversed = child.getTranslationY();
+        assertTrue(Math.abs(reversed - midway) < Math.abs(collapsed) / 4f);
+
+        idle(1000);
+        assertEquals(collapsed, child.getTranslationY(), 0.01f);
+        assertEquals(0f, child.getAlpha(), 0.01f);
+    }
+
+    @Test
+    public void collapseImmediatelyJumpsToEnd() {
+        FloatingMusicMenu menu = layout(FloatingMusicMenuRenderTest.createMenu(FloatingMusicMenu.FLOATING_DIRECTION_LEFT));
+        View child = menu.getChildAt(0);
+        float collapsed = child.getTranslationX();
+
+        menu.expand();
+        idle(1000);
+        assertEquals(0f, child.getTranslationX(), 0.01f);
+        assertEquals(1f, child.getAlpha(), 0.01f);
+
+        menu.collapseImmediately();
+        assertEquals(collapsed, child.getTranslationX(), 0.01f);
+    }
+
+    private static FloatingMusicMenu layout(FloatingMusicMenu menu) {
+        int spec = View.MeasureSpec.makeMeasureSpec(1024, View.MeasureSpec.AT_MOST);
+        menu.measure(spec, spec);
+        menu.layout(0, 0, menu.getMeasuredWidth(), menu.getMeasuredHeight());
+        return menu;
+    }
+
+    private static void idle(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+}
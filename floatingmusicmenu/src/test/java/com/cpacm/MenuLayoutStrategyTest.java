@@ -0,0 +1,66 @@
+package com.cpacm;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 扇形排列的布局缓存不会把其它排列方式写入的结果当作命中，改变展开方向时保留自定义的排列方式
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MenuLayoutStrategyTest {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 300;
+
+    @Test
+    public void fanCacheIsInvalidatedByLinearLayout() {
+        MenuLayoutStrategy fan = MenuLayoutStrategy.fan(MenuLayoutStrategy.FAN_CORNER_BOTTOM_RIGHT, 0);
+        MenuLayoutStrategy.Items items = createItems(3);
+        fan.layout(items, WIDTH, HEIGHT);
+        int[] fanLefts = Arrays.copyOf(items.lefts, items.count);
+        int[] fanTops = Arrays.copyOf(items.tops, items.count);
+
+        MenuLayoutStrategy.linear(FloatingMusicMenu.FLOATING_DIRECTION_UP).layout(items, WIDTH, HEIGHT);
+        fan.layout(items, WIDTH, HEIGHT);
+
+        assertArrayEquals(fanLefts, Arrays.copyOf(items.lefts, items.count));
+        assertArrayEquals(fanTops, Arrays.copyOf(items.tops, items.count));
+    }
+
+    @Test
+    public void directionChangeKeepsCustomStrategy() {
+        FloatingMusicMenu menu = FloatingMusicMenuRenderTest.createMenu(FloatingMusicMenu.FLOATING_DIRECTION_UP);
+        MenuLayoutStrategy fan = MenuLayoutStrategy.fan(MenuLayoutStrategy.FAN_CORNER_BOTTOM_RIGHT, 0);
+        menu.setLayoutStrategy(fan);
+        menu.setFloatingDirection(FloatingMusicMenu.FLOATING_DIRECTION_LEFT);
+        assertSame(fan, menu.getLayoutStrategy());
+
+        // 直线排列仍然跟随展开方向
+        menu.setLayoutStrategy(MenuLayoutStrategy.linear(FloatingMusicMenu.FLOATING_DIRECTION_UP));
+        menu.setFloatingDirection(FloatingMusicMenu.FLOATING_DIRECTION_DOWN);
+        assertSame(MenuLayoutStrategy.linear(FloatingMusicMenu.FLOATING_DIRECTION_DOWN), menu.getLayoutStrategy());
+    }
+
+    private static MenuLayoutStrategy.Items createItems(int count) {
+        MenuLayoutStrategy.Items items = new MenuLayoutStrategy.Items();
+        items.ensureCapacity(count);
+        items.count = count;
+        items.rootWidth = 56;
+        items.rootHeight = 56;
+        items.interval = 4;
+        items.padding = 20;
+        for (int i = 0; i < count; i++) {
+            items.widths[i] = 40;
+            items.heights[i] = 40;
+        }
+        return items;
+    }
+}
@@ -0,0 +1,231 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * 统计每个像素被绘制次数的画布。每次绘制都会以纯色在一张临时位图上重放，覆盖到的像素计数加一，
+ * 与 GPU 过度绘制调试的统计方式一致：完全透明的画笔不计入（Skia 会直接跳过），裁剪区域不参与计算。
+ */
+class OverdrawCanvas extends Canvas {
+
+    private final Bitmap scratch;
+    private final Canvas scratchCanvas;
+    private final Paint coverPaint = new Paint();
+    private final int[] pixels;
+    private final int[] counts;
+    private final int width;
+
+    OverdrawCanvas(int width, int height) {
+        super(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+        this.width = width;
+        scratch = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        scratchCanvas = new Canvas(scratch);
+        pixels = new int[width * height];
+        counts = new int[width * height];
+    }
+
+    /**
+     * 区域内被绘制至少 times 次的像素占比
+     */
+    float fractionDrawnAtLeast(Rect region, int times) {
+        int matched = 0;
+        for (int y = region.top; y < region.bottom; y++) {
+            for (int x = region.left; x < region.right; x++) {
+                if (counts[y * width + x] >= times) matched++;
+            }
+        }
+        return matched / (float) (region.width() * region.height());
+    }
+
+    /**
+     * 区域内被绘制过的像素的平均绘制次数
+     */
+    float averageOverdraw(Rect region) {
+        int drawn = 0;
+        int total = 0;
+        for (int y = region.top; y < region.bottom; y++) {
+            for (int x = region.left; x < region.right; x++) {
+                int count = counts[y * width + x];
+                if (count > 0) {
+                    drawn++;
+                    total += count;
+                }
+            }
+        }
+        return drawn == 0 ? 0 : total / (float) drawn;
+    }
+
+    private boolean prepare(Paint paint) {
+        if (paint != null && paint.getAlpha() == 0 && paint.getShader() == null && paint.getXfermode() == null) {
+            return false;
+        }
+        scratch.eraseColor(Color.TRANSPARENT);
+        scratchCanvas.setMatrix(getMatrix());
+        if (paint != null) {
+            coverPaint.set(paint);
+        } else {
+            coverPaint.reset();
+        }
+        coverPaint.setShader(null);
+        coverPaint.setColorFilter(null);
+        coverPaint.setXfermode(null);
+        coverPaint.setColor(Color.WHITE);
+        return true;
+    }
+
+    private void accumulate() {
+        scratch.getPixels(pixels, 0, width, 0, 0, width, scratch.getHeight());
+        for (int i = 0; i < pixels.length; i++) {
+            // 抗锯齿边缘覆盖不到一半的像素不计入
+            if (Color.alpha(pixels[i]) >= 0x80) counts[i]++;
+        }
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        super.drawCircle(cx, cy, radius, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawCircle(cx, cy, radius, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawArc(RectF oval, float startAngle, float sweepAngle, boolean useCenter, Paint paint) {
+        super.drawArc(oval, startAngle, sweepAngle, useCenter, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawArc(oval, startAngle, sweepAngle, useCenter, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawArc(float left, float top, float right, float bottom, float startAngle, float sweepAngle,
+                        boolean useCenter, Paint paint) {
+        super.drawArc(left, top, right, bottom, startAngle, sweepAngle, useCenter, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawArc(left, top, right, bottom, startAngle, sweepAngle, useCenter, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawOval(RectF oval, Paint paint) {
+        super.drawOval(oval, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawOval(oval, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, Paint paint) {
+        super.drawOval(left, top, right, bottom, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawOval(left, top, right, bottom, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        super.drawRect(rect, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawRect(rect, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        super.drawRect(left, top, right, bottom, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawRect(left, top, right, bottom, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+        super.drawRoundRect(rect, rx, ry, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawRoundRect(rect, rx, ry, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, Paint paint) {
+        super.drawRoundRect(left, top, right, bottom, rx, ry, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawRoundRect(left, top, right, bottom, rx, ry, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        super.drawPath(path, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawPath(path, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        super.drawBitmap(bitmap, src, dst, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawRect(dst, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        super.drawBitmap(bitmap, src, dst, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawRect(dst, coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        super.drawBitmap(bitmap, left, top, paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawRect(left, top, left + bitmap.getWidth(), top + bitmap.getHeight(), coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawPaint(Paint paint) {
+        super.drawPaint(paint);
+        if (prepare(paint)) {
+            scratchCanvas.drawPaint(coverPaint);
+            accumulate();
+        }
+    }
+
+    @Override
+    public void drawColor(int color) {
+        drawColor(color, PorterDuff.Mode.SRC_OVER);
+    }
+
+    @Override
+    public void drawColor(int color, PorterDuff.Mode mode) {
+        super.drawColor(color, mode);
+        if (Color.alpha(color) != 0 || mode != PorterDuff.Mode.SRC_OVER) {
+            scratch.eraseColor(Color.WHITE);
+            accumulate();
+        }
+    }
+}
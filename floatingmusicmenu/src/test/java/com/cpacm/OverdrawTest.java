@@ -0,0 +1,119 @@
+package com.cpacm;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Outline;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 统计音乐按钮区域内的过度绘制
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class OverdrawTest {
+
+    @Test
+    public void opaqueCoverReportsOpaque() {
+        RotatingProgressDrawable drawable = new RotatingProgressDrawable(
+                ApplicationProvider.getApplicationContext().getResources(), RenderHarness.createTestCover(96));
+        assertTrue(drawable.isCoverOpaque());
+
+        Bitmap translucent = RenderHarness.createTestCover(96);
+        translucent.setPixel(48, 48, 0x80FFFFFF);
+        RotatingProgressDrawable translucentDrawable = new RotatingProgressDrawable(
+                ApplicationProvider.getApplicationContext().getResources(), translucent);
+        assertFalse(translucentDrawable.isCoverOpaque());
+    }
+
+    @Test
+    public void transparentRimIsNotOpaque() {
+        Bitmap cover = RenderHarness.createTestCover(96);
+        Paint clear = new Paint(Paint.ANTI_ALIAS_FLAG);
+        clear.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+        clear.setStyle(Paint.Style.STROKE);
+        clear.setStrokeWidth(6);
+        new Canvas(cover).drawCircle(48, 48, 45, clear);
+        RotatingProgressDrawable drawable = new RotatingProgressDrawable(
+                ApplicationProvider.getApplicationContext().getResources(), cover);
+        assertFalse(drawable.isCoverOpaque());
+
+        Outline outline = new Outline();
+        drawable.setBounds(0, 0, 96, 96);
+        drawable.getOutline(outline);
+        assertEquals(0f, outline.getAlpha(), 0f);
+    }
+
+    @Test
+    public void optimizedButtonDrawsEachPixelOnce() {
+        OverdrawCanvas normal = drawButton(false);
+        OverdrawCanvas optimized = drawButton(true);
+        Rect region = region(normal);
+
+        float normalOverdraw = normal.averageOverdraw(region);
+        float optimizedOverdraw = optimized.averageOverdraw(region);
+        // 默认模式下封面整个画在背景上
+        assertTrue("normal overdraw " + normalOverdraw, normalOverdraw > 1.5f);
+        assertTrue("optimized overdraw " + optimizedOverdraw, optimizedOverdraw < 1.2f);
+        // 只剩下封面、进度条与底色相接处的抗锯齿边缘会被绘制两次
+        assertTrue(optimized.fractionDrawnAtLeast(region, 2) < 0.1f);
+    }
+
+    @Test
+    public void translucentCoverKeepsBackground() {
+        Bitmap translucent = RenderHarness.createTestCover(96);
+        translucent.eraseColor(0x80FF0000);
+        FloatingMusicButton button = createButton(translucent, true);
+        OverdrawCanvas canvas = draw(button);
+        // 背景仍然需要绘制
+        assertTrue(canvas.averageOverdraw(region(canvas)) > 1.5f);
+    }
+
+    private static Rect region(OverdrawCanvas canvas) {
+        return new Rect(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    private static OverdrawCanvas drawButton(boolean optimized) {
+        return draw(createButton(RenderHarness.createTestCover(96), optimized));
+    }
+
+    private static OverdrawCanvas draw(FloatingMusicButton button) {
+        button.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        button.layout(0, 0, button.getMeasuredWidth(), button.getMeasuredHeight());
+        OverdrawCanvas canvas = new OverdrawCanvas(button.getWidth(), button.getHeight());
+        button.draw(canvas);
+        return canvas;
+    }
+
+    private static FloatingMusicButton createButton(Bitmap cover, boolean optimized) {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                com.google.android.material.R.style.Theme_MaterialComponents_Light);
+        FloatingMusicButton button = new FloatingMusicButton(context);
+        button.config(3, Color.WHITE, ColorStateList.valueOf(Color.DKGRAY));
+        button.setOverdrawOptimized(optimized);
+        button.setCover(cover);
+        button.setProgress(30f);
+        return button;
+    }
+}
@@ -0,0 +1,84 @@
+package com.cpacm;
+
+import android.graphics.drawable.Drawable;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 其它线程更新进度时，没有触发 draw() 的重绘不会让之后的更新被忽略
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ProgressInvalidateTest {
+
+    @Test
+    public void undrawnInvalidateDoesNotBlockLaterUpdates() throws InterruptedException {
+        RotatingProgressDrawable drawable = RotatingProgressDrawable.fromRasterizedCover(RenderHarness.createTestCover(96));
+        CountingCallback callback = new CountingCallback();
+        drawable.setCallback(callback);
+
+        // 回调只计数，不会调用 draw()
+        setProgressOnWorker(drawable, 10f);
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(1, callback.invalidates);
+
+        setProgressOnWorker(drawable, 20f);
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(2, callback.invalidates);
+    }
+
+    @Test
+    public void hiddenDrawableDropsPendingInvalidate() throws InterruptedException {
+        RotatingProgressDrawable drawable = RotatingProgressDrawable.fromRasterizedCover(RenderHarness.createTestCover(96));
+        CountingCallback callback = new CountingCallback();
+        drawable.setCallback(callback);
+
+        setProgressOnWorker(drawable, 10f);
+        drawable.setVisible(false, false);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        drawable.setVisible(true, false);
+        int visible = callback.invalidates;
+        setProgressOnWorker(drawable, 20f);
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(visible + 1, callback.invalidates);
+    }
+
+    private static void setProgressOnWorker(final RotatingProgressDrawable drawable, final float progress)
+            throws InterruptedException {
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drawable.setProgress(progress);
+            }
+        });
+        worker.start();
+        worker.join();
+    }
+
+    private static final class CountingCallback implements Drawable.Callback {
+        int invalidates;
+
+        @Override
+        public void invalidateDrawable(Drawable who) {
+            invalidates++;
+        }
+
+        @Override
+        public void scheduleDrawable(Drawable who, Runnable what, long when) {
+        }
+
+        @Override
+        public void unscheduleDrawable(Drawable who, Runnable what) {
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ * 渲染测试工具：把 Drawable 或 View 画进位图，与 src/test/resources/golden 下的基准图片比较，
+ * 并记录每一帧的绘制耗时，测试结束后写入 build/outputs/render/timings.json。
+ * </p>
+ * <p>
+ * 基准图片缺失时会把渲染结果写到输出目录并使测试失败；使用 -Pfmm.recordGoldens=true 运行时直接更新基准图片。
+ * golden 目录里还没有任何基准图片时，默认的测试任务不会运行 *RenderTest。
+ * </p>
+ */
+final class RenderHarness {
+
+    private static final int CHANNEL_TOLERANCE = 3;
+    private static final float MAX_DIFF_RATIO = 0.002f;
+    private static final int TIMING_FRAMES = 30;
+
+    private final String suite;
+    private final Map<String, List<Long>> timings = new LinkedHashMap<>();
+    private final List<String> missingGoldens = new ArrayList<>();
+
+    RenderHarness(String suite) {
+        this.suite = suite;
+    }
+
+    /**
+     * 渲染 drawable，同时记录 {@link #TIMING_FRAMES} 帧的绘制耗时
+     */
+    Bitmap render(String name, Drawable drawable, int size) {
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, size, size);
+        List<Long> frames = new ArrayList<>();
+        for (int i = 0; i < TIMING_FRAMES; i++) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+            long start = System.nanoTime();
+            drawable.draw(canvas);
+            frames.add(System.nanoTime() - start);
+        }
+        timings.put(name, frames);
+        return bitmap;
+    }
+
+    /**
+     * 测量、布局并渲染 view，同时记录绘制耗时
+     */
+    Bitmap render(String name, View view, int width, int height) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.AT_MOST),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.AT_MOST));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, view.getWidth()), Math.max(1, view.getHeight()),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        List<Long> frames = new ArrayList<>();
+        for (int i = 0; i < TIMING_FRAMES; i++) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+            long start = System.nanoTime();
+            view.draw(canvas);
+            frames.add(System.nanoTime() - start);
+        }
+        timings.put(name, frames);
+        return bitmap;
+    }
+
+    /**
+     * 缺少基准图片时测试失败。同一个测试中的所有候选图片都已经写入输出目录，确认无误后用
+     * -Pfmm.recordGoldens=true 重新运行即可记录
+     */
+    void assertGoldensPresent() {
+        List<String> missing = new ArrayList<>(missingGoldens);
+        missingGoldens.clear();
+        assertTrue("missing golden images " + missing + ", candidates written to " + outputDir()
+                + "; record them with -Pfmm.recordGoldens=true", missing.isEmpty());
+    }
+
+    /**
+     * 与基准图片比较，允许每个通道 {@link #CHANNEL_TOLERANCE} 的误差和极少量的像素差异（抗锯齿边缘）
+     */
+    void assertMatchesGolden(String name, Bitmap actual) throws IOException {
+        String fileName = suite + "_" + name + ".png";
+        if (Boolean.getBoolean("fmm.recordGoldens")) {
+            write(actual, new File(System.getProperty("fmm.goldenDir", "src/test/resources/golden"), fileName));
+            return;
+        }
+        InputStream in = RenderHarness.class.getClassLoader().getResourceAsStream("golden/" + fileName);
+        if (in == null) {
+            write(actual, new File(outputDir(), "candidates/" + fileName));
+            missingGoldens.add(fileName);
+            return;
+        }
+        Bitmap expected;
+        try {
+            expected = BitmapFactory.decodeStream(in);
+        } finally {
+            in.close();
+        }
+        assertTrue(fileName + " size mismatch", expected.getWidth() == actual.getWidth()
+                && expected.getHeight() == actual.getHeight());
+        int diff = 0;
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                if (!similar(expected.getPixel(x, y), actual.getPixel(x, y))) {
+                    diff++;
+                }
+            }
+        }
+        float ratio = diff / (float) (actual.getWidth() * actual.getHeight());
+        if (ratio > MAX_DIFF_RATIO) {
+            write(actual, new File(outputDir(), "failures/" + fileName));
+        }
+        assertTrue(fileName + " differs from golden in " + diff + " pixels", ratio <= MAX_DIFF_RATIO);
+    }
+
+    /**
+     * 把记录的绘制耗时写入 JSON 报告，包含每个场景的中位数、p90 和最大值（微秒）
+     */
+    void writeTimingReport() throws IOException {
+        File file = new File(outputDir(), suite + "_timings.json");
+        file.getParentFile().mkdirs();
+        StringBuilder json = new StringBuilder("{\n  \"suite\": \"").append(suite).append("\",\n  \"scenarios\": {");
+        boolean first = true;
+        for (Map.Entry<String, List<Long>> entry : timings.entrySet()) {
+            List<Long> frames = new ArrayList<>(entry.getValue());
+            Collections.sort(frames);
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    \"").append(entry.getKey()).append("\": {")
+                    .append("\"frames\": ").append(frames.size())
+                    .append(", \"medianUs\": ").append(frames.get(frames.size() / 2) / 1000)
+                    .append(", \"p90Us\": ").append(frames.get(frames.size() * 9 / 10) / 1000)
+                    .append(", \"maxUs\": ").append(frames.get(frames.size() - 1) / 1000)
+                    .append("}");
+        }
+        json.append("\n  }\n}\n");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static boolean similar(int c1, int c2) {
+        return Math.abs(Color.alpha(c1) - Color.alpha(c2)) <= CHANNEL_TOLERANCE
+                && Math.abs(Color.red(c1) - Color.red(c2)) <= CHANNEL_TOLERANCE
+                && Math.abs(Color.green(c1) - Color.green(c2)) <= CHANNEL_TOLERANCE
+                && Math.abs(Color.blue(c1) - Color.blue(c2)) <= CHANNEL_TOLERANCE;
+    }
+
+    private static File outputDir() {
+        return new File(System.getProperty("fmm.outputDir", "build/outputs/render"));
+    }
+
+    private static void write(Bitmap bitmap, File file) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 生成确定性的测试封面：四个颜色不同的象限，便于观察旋转角度
+     */
+    static Bitmap createTestCover(int size) {
+        Bitmap cover = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        int half = size / 2;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int color;
+                if (x < half) {
+                    color = y < half ? 0xFFE53935 : 0xFF1E88E5;
+                } else {
+                    color = y < half ? 0xFF43A047 : 0xFFFDD835;
+                }
+                cover.setPixel(x, y, color);
+            }
+        }
+        return cover;
+    }
+}
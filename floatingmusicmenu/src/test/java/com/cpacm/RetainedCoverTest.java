@@ -0,0 +1,51 @@
+package com.cpacm;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.view.ContextThemeWrapper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 页面结束后不再保留封面位图
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RetainedCoverTest {
+
+    @Test
+    public void finishingActivityLeavesNothingRetained() {
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).setup();
+        Activity activity = controller.get();
+        Context context = new ContextThemeWrapper(activity,
+                com.google.android.material.R.style.Theme_MaterialComponents_Light);
+        FloatingMusicButton button = new FloatingMusicButton(context);
+        button.setCover(RenderHarness.createTestCover(96));
+        activity.setContentView(button);
+
+        Bundle state = new Bundle();
+        button.saveCoverState(state);
+        String key = state.getString(FloatingMusicButton.STATE_COVER_KEY);
+        assertNotNull(key);
+
+        activity.finish();
+        controller.pause().stop().destroy();
+        if (button.isAttachedToWindow()) {
+            // 与 ActivityThread 销毁页面时一样移除窗口
+            activity.getWindowManager().removeViewImmediate(activity.getWindow().getDecorView());
+        }
+
+        assertNull(RetainedCoverHolder.take(key));
+    }
+}
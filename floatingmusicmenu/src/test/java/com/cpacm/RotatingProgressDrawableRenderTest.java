@@ -0,0 +1,79 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.IOException;
+
+/**
+ * 在不同尺寸、角度和进度下渲染 {@link RotatingProgressDrawable} 并与基准图片比较
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RotatingProgressDrawableRenderTest {
+
+    private static final int[] SIZES = {48, 96, 168};
+    private static final float[] ANGLES = {0f, 45f, 180f};
+    private static final float[] PROGRESSES = {0f, 33f, 100f};
+
+    private static final RenderHarness harness = new RenderHarness("drawable");
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        harness.writeTimingReport();
+    }
+
+    @Test
+    public void rendersSizesAndAngles() throws IOException {
+        for (int size : SIZES) {
+            for (float angle : ANGLES) {
+                RotatingProgressDrawable drawable = createDrawable(size);
+                drawable.setRotation(angle);
+                drawable.setProgress(50f);
+                String name = "size" + size + "_angle" + (int) angle;
+                harness.assertMatchesGolden(name, harness.render(name, drawable, size));
+            }
+        }
+        harness.assertGoldensPresent();
+    }
+
+    @Test
+    public void rendersProgress() throws IOException {
+        for (float progress : PROGRESSES) {
+            RotatingProgressDrawable drawable = createDrawable(96);
+            drawable.setProgress(progress);
+            String name = "progress" + (int) progress;
+            harness.assertMatchesGolden(name, harness.render(name, drawable, 96));
+        }
+        harness.assertGoldensPresent();
+    }
+
+    @Test
+    public void rendersBufferedProgressAndGradient() throws IOException {
+        RotatingProgressDrawable drawable = createDrawable(96);
+        drawable.setProgressWidthPercent(6);
+        drawable.setProgressGradient(new int[]{Color.CYAN, Color.MAGENTA});
+        drawable.setProgress(40f);
+        drawable.setBufferedProgress(75f);
+        harness.assertMatchesGolden("buffered_gradient", harness.render("buffered_gradient", drawable, 96));
+        harness.assertGoldensPresent();
+    }
+
+    private static RotatingProgressDrawable createDrawable(int size) {
+        Bitmap cover = RenderHarness.createTestCover(size);
+        RotatingProgressDrawable drawable = new RotatingProgressDrawable(
+                ApplicationProvider.getApplicationContext().getResources(), cover);
+        drawable.setProgressColor(Color.BLACK);
+        return drawable;
+    }
+}
@@ -0,0 +1,106 @@
+package com.cpacm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 使用假的时钟和电源状态验证 {@link RotationTicker} 与 {@link FrameRatePolicy}
+ */
+public class RotationTickerTest {
+
+    private static final float DELTA = 0.001f;
+
+    private FakeClock clock;
+    private FakePowerState powerState;
+    private RotationTicker ticker;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        powerState = new FakePowerState();
+        ticker = new RotationTicker(clock, FrameRatePolicy.powerAware(powerState));
+        ticker.start();
+    }
+
+    @Test
+    public void defaultPolicyMatchesPreviousCadence() {
+        assertEquals(25, FrameRatePolicy.DEFAULT.getFrameInterval());
+        clock.time += 25;
+        assertEquals(25, ticker.tick());
+        assertEquals(1f, ticker.getRotation(), DELTA);
+    }
+
+    @Test
+    public void powerSaveLowersFrameRate() {
+        powerState.powerSave = true;
+        clock.time += 50;
+        assertEquals(50, ticker.tick());
+        assertEquals(2f, ticker.getRotation(), DELTA);
+    }
+
+    @Test
+    public void thermalThrottlingLowersFrameRate() {
+        powerState.thermal = PowerStateSource.THERMAL_STATUS_MODERATE;
+        assertEquals(FrameRatePolicy.POWER_SAVE_FPS, ticker.getPolicy().getTargetFps());
+        powerState.thermal = PowerStateSource.THERMAL_STATUS_SEVERE;
+        assertEquals(FrameRatePolicy.THROTTLED_FPS, ticker.getPolicy().getTargetFps());
+        powerState.thermal = PowerStateSource.THERMAL_STATUS_LIGHT;
+        assertEquals(FrameRatePolicy.DEFAULT_FPS, ticker.getPolicy().getTargetFps());
+    }
+
+    @Test
+    public void lateFrameSkipsAndKeepsAngularSpeed() {
+        // 主线程卡顿 60ms，角度按实际时间推进，下一帧对齐到 75ms
+        clock.time += 60;
+        assertEquals(15, ticker.tick());
+        assertEquals(2.4f, ticker.getRotation(), DELTA);
+        clock.time += 15;
+        assertEquals(25, ticker.tick());
+        assertEquals(3f, ticker.getRotation(), DELTA);
+    }
+
+    @Test
+    public void angularSpeedIndependentOfFrameRate() {
+        RotationTicker slow = new RotationTicker(clock, FrameRatePolicy.fixed(10));
+        slow.start();
+        for (int i = 0; i < 10; i++) {
+            clock.time += 100;
+            slow.tick();
+        }
+        assertEquals(RotationTicker.DEFAULT_DEGREES_PER_SECOND, slow.getRotation(), DELTA);
+    }
+
+    @Test
+    public void rotationWrapsAround() {
+        ticker.setRotation(359f);
+        clock.time += 50;
+        ticker.tick();
+        assertEquals(1f, ticker.getRotation(), DELTA);
+    }
+
+    private static class FakeClock implements FrameClock {
+        long time = 1000;
+
+        @Override
+        public long uptimeMillis() {
+            return time;
+        }
+    }
+
+    private static class FakePowerState implements PowerStateSource {
+        boolean powerSave;
+        int thermal = THERMAL_STATUS_NONE;
+
+        @Override
+        public boolean isPowerSaveMode() {
+            return powerSave;
+        }
+
+        @Override
+        public int getThermalStatus() {
+            return thermal;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.cpacm;
+
+import android.app.Activity;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 拖动预览时 seek 的限流和松手提交
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ScrubTest {
+
+    private FloatingMusicMenu menu;
+    private final List<Float> seeks = new ArrayList<>();
+    private final List<Float> commits = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        menu = FloatingMusicMenuRenderTest.createMenu(FloatingMusicMenu.FLOATING_DIRECTION_UP);
+        // 延迟的 seek 通过 View#postDelayed 发送，需要加入窗口
+        Robolectric.buildActivity(Activity.class).setup().get().setContentView(menu);
+        menu.setOnSeekListener(new FloatingMusicMenu.OnSeekListener() {
+            @Override
+            public void onSeek(float progress) {
+                seeks.add(progress);
+            }
+
+            @Override
+            public void onSeekCommitted(float progress) {
+                commits.add(progress);
+            }
+        });
+    }
+
+    @Test
+    public void seeksAreRateLimited() {
+        menu.beginScrub();
+        assertTrue(menu.isScrubbing());
+        // 一次拖动产生大量事件，间隔内只 seek 一次
+        for (int i = 1; i <= 50; i++) {
+            menu.scrubTo(i);
+        }
+        assertEquals(1, seeks.size());
+        assertEquals(1f, seeks.get(0), 0f);
+
+        idle(FloatingMusicMenu.DEFAULT_SEEK_INTERVAL);
+        // 间隔结束后补发最后一个位置
+        assertEquals(2, seeks.size());
+        assertEquals(50f, seeks.get(1), 0f);
+
+        menu.endScrub();
+        assertFalse(menu.isScrubbing());
+        // 松手位置已经 seek 过，不再重复
+        assertEquals(2, seeks.size());
+        assertEquals(1, commits.size());
+        assertEquals(50f, commits.get(0), 0f);
+    }
+
+    @Test
+    public void releaseSeeksPendingPosition() {
+        menu.beginScrub();
+        menu.scrubTo(10);
+        menu.scrubTo(20);
+        menu.endScrub();
+        idle(FloatingMusicMenu.DEFAULT_SEEK_INTERVAL * 2);
+        assertEquals(2, seeks.size());
+        assertEquals(20f, seeks.get(1), 0f);
+        assertEquals(1, commits.size());
+    }
+
+    @Test
+    public void intervalZeroOnlyCommitsOnRelease() {
+        menu.setSeekInterval(0);
+        menu.beginScrub();
+        for (int i = 1; i <= 10; i++) {
+            menu.scrubTo(i * 5);
+        }
+        assertTrue(seeks.isEmpty());
+        menu.endScrub();
+        assertEquals(1, seeks.size());
+        assertEquals(50f, seeks.get(0), 0f);
+    }
+
+    private static void idle(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+}
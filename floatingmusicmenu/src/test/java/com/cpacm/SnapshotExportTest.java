@@ -0,0 +1,101 @@
+package com.cpacm;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 快照导出的尺寸上限、限流和跳过没有变化的画面
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class SnapshotExportTest {
+
+    private FloatingMusicMenu menu;
+    private Bitmap target;
+
+    @Before
+    public void setUp() {
+        menu = FloatingMusicMenuRenderTest.createMenu(FloatingMusicMenu.FLOATING_DIRECTION_UP);
+        // 后台裁剪完成后会重绘，固定使用 shader 绘制，避免影响画面是否变化的判断
+        menu.setCoverRenderMode(RotatingProgressDrawable.RENDER_MODE_SHADER);
+        target = RotatingProgressDrawable.createSnapshotBitmap(64, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void snapshotBitmapIsCapped() {
+        Bitmap bitmap = RotatingProgressDrawable.createSnapshotBitmap(4096, Bitmap.Config.RGB_565);
+        assertEquals(RotatingProgressDrawable.MAX_SNAPSHOT_SIZE, bitmap.getWidth());
+        assertEquals(RotatingProgressDrawable.MAX_SNAPSHOT_SIZE, bitmap.getHeight());
+        assertEquals(Bitmap.Config.RGB_565, bitmap.getConfig());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oversizedTargetIsRejected() {
+        Bitmap bitmap = Bitmap.createBitmap(1024, 1024, Bitmap.Config.ARGB_8888);
+        menu.exportSnapshot(bitmap);
+    }
+
+    @Test
+    public void rendersCoverIntoTarget() {
+        assertTrue(menu.exportSnapshot(target));
+        // 圆心是封面，四角在圆形之外保持透明
+        assertTrue(Color.alpha(target.getPixel(32, 32)) > 0);
+        assertEquals(Color.TRANSPARENT, target.getPixel(0, 0));
+    }
+
+    @Test
+    public void unchangedAndFrequentFramesAreSkipped() {
+        assertTrue(menu.exportSnapshot(target));
+        // 画面没有变化，即使已经超过间隔也不再导出
+        idle(FloatingMusicButton.DEFAULT_SNAPSHOT_INTERVAL);
+        assertFalse(menu.exportSnapshot(target));
+
+        menu.setProgress(60f);
+        assertTrue(menu.exportSnapshot(target));
+        // 间隔内的变化被限流，到达间隔后导出最新的画面
+        menu.setProgress(70f);
+        assertFalse(menu.exportSnapshot(target));
+        idle(FloatingMusicButton.DEFAULT_SNAPSHOT_INTERVAL);
+        assertTrue(menu.exportSnapshot(target));
+    }
+
+    @Test
+    public void intervalZeroOnlySkipsUnchangedFrames() {
+        menu.setSnapshotInterval(0);
+        assertTrue(menu.exportSnapshot(target));
+        assertFalse(menu.exportSnapshot(target));
+        menu.setProgress(80f);
+        assertTrue(menu.exportSnapshot(target));
+    }
+
+    @Test
+    public void snapshotDoesNotChangeContentVersion() {
+        RotatingProgressDrawable drawable = RotatingProgressDrawable.fromRasterizedCover(RenderHarness.createTestCover(96));
+        drawable.setRotation(45f);
+        int version = drawable.getContentVersion();
+        assertTrue(drawable.drawSnapshot(target));
+        // 导出不会修改 bounds，也不会让画面版本变化
+        assertEquals(version, drawable.getContentVersion());
+        assertTrue(drawable.getBounds().isEmpty());
+    }
+
+    private static void idle(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+}